@@ -27,8 +27,12 @@ package com.sun.tdk.apicover;
 import com.sun.tdk.signaturetest.model.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * APIVisitor is used to go through api.
@@ -45,33 +49,32 @@ class APIVisitor {
     }
 
     private void collectPackages() {
-        List<PackageDescr> packages = new ArrayList<>();
-        packages.add(top);
+        top = new PackageDescr("");
+        Map<String, PackageDescr> packages = new HashMap<>();
+        packages.put(top.getQualifiedName(), top);
         for (ClassDescription cd : api) {
             String pname = cd.getPackageName();
             addPackage(pname, packages).add(cd);
         }
     }
 
-    private static PackageDescr addPackage(String pname, List<PackageDescr> packages) {
-        PackageDescr newPackage = new PackageDescr(pname);
-        PackageDescr parent = null;
-        for (PackageDescr pd : packages) {
-            if (pd.equals(newPackage)) {
-                return pd;
-            }
-            if (ClassDescription.getPackageName(pname).equals(pd.getQualifiedName())) {
-                parent = pd;
-            }
+    private static PackageDescr addPackage(String pname, Map<String, PackageDescr> packages) {
+        PackageDescr pd = packages.get(pname);
+        if (pd == null) {
+            pd = new PackageDescr(pname);
+            PackageDescr parent = addPackage(ClassDescription.getPackageName(pname), packages);
+            packages.put(pname, pd);
+            parent.add(pd);
         }
-        if (parent == null) {
-            parent = addPackage(ClassDescription.getPackageName(pname), packages);
-        }
-        packages.add(newPackage);
-        parent.add(newPackage);
-        return newPackage;
+        return pd;
     }
 
+    private static final Comparator<MemberDescription> MEMBER_ORDER = new Comparator<MemberDescription>() {
+        public int compare(MemberDescription m1, MemberDescription m2) {
+            return (m1.getName() + m1.getArgs()).compareTo(m2.getName() + m2.getArgs());
+        }
+    };
+
     protected void visit(PackageDescr x) {
         //System.err.println("TRY ==================" + x);
         for (Object cd : x.getDeclaredClasses()) {
@@ -86,24 +89,12 @@ class APIVisitor {
 
     protected void visit(ClassDescription x) {
 
-        // XXX
-        // hand-made sort of members
+        // members sorted by name and arguments, the sort is stable
         List<MemberDescription> list = new ArrayList<>();
         for (Iterator<MemberDescription> i = x.getMembersIterator(); i.hasNext(); ) {
-            boolean isInserted = false;
-            MemberDescription md = i.next();
-            for (int j = 0; j < list.size(); j++) {
-                if ((list.get(j).getName() + list.get(j).getArgs())
-                        .compareTo(md.getName() + md.getArgs()) > 0) {
-                    list.add(j, md);
-                    isInserted = true;
-                    break;
-                }
-            }
-            if (!isInserted) {
-                list.add(md);
-            }
+            list.add(i.next());
         }
+        Collections.sort(list, MEMBER_ORDER);
         for (MemberDescription md : list) {
             if (md instanceof ConstructorDescr) {
                 ConstructorDescr constr = (ConstructorDescr) md;
@@ -59,6 +59,11 @@ public class ApicovOptions extends Options {
             Option.EXCLUDE_LIST,
             Option.FILTERMAP,
             Option.FILTERSIG,
+            Option.THREADS,
+            Option.CACHE,
+            Option.SHARD,
+            Option.COUNTS,
+            Option.WRITE_COUNTS,
             Option.DEBUG,
             Option.VERSION,
             Option.HELP,
@@ -24,25 +24,20 @@
  */
 package com.sun.tdk.apicover;
 
+import com.sun.tdk.signaturetest.Result;
 import com.sun.tdk.signaturetest.Version;
 import com.sun.tdk.signaturetest.core.context.Option;
 import com.sun.tdk.signaturetest.util.*;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.*;
-
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 public class CMerge {
 
@@ -50,41 +45,45 @@ public class CMerge {
     String oFile;
     String[] iFiles;
     boolean strict = false;
-    CovDocument[] docs;
     public static final String STRICT_OPTION = "-Strict";
-    Document result;
-    Element resultReport;
-    final XPathFactory xPathfactory = XPathFactory.newInstance();
+    // result writer, null while the input files are checked
+    private XMLStreamWriter out;
+    private int depth;
+    // sorted copies of the input files which were not sorted, mapped to
+    // the names of the input files
+    private final Map<File, String> sortedCopies = new HashMap<>();
 
     public static void main(String[] args) {
-        new CMerge().perform(args);
+        if (!new CMerge().perform(args) && !Boolean.parseBoolean(System.getProperty(Result.NO_EXIT))) {
+            System.exit(1);
+        }
     }
 
-    private void perform(String[] args) {
+    /**
+     * Returns false if the reports were not merged
+     */
+    private boolean perform(String[] args) {
 
         if (parseParameters(args)) {
-            perform();
+            return perform();
         } else if (args.length > 0 && Option.VERSION.accept(args[0])) {
             System.err.println(Version.getVersionInfo());
         } else {
             usage();
         }
+        return true;
     }
 
-    private void perform() {
-        docs = new CovDocument[iFiles.length];
+    private boolean perform() {
         try {
-
-            for (int i = 0; i < iFiles.length; i++) {
-                docs[i] = new CovDocument(iFiles[i]);
-            }
-
-            if (checkAndMerge(docs, strict)) {
-                saveToXml(result, oFile);
-            }
-
-        } catch (SAXException | TransformerException | XPathExpressionException | ParserConfigurationException | IOException ex) {
+            return checkAndMerge();
+        } catch (XMLStreamException | IOException ex) {
             SwissKnife.reportThrowable(ex);
+            return false;
+        } finally {
+            for (File f : sortedCopies.keySet()) {
+                f.delete();
+            }
         }
     }
 
@@ -156,9 +155,15 @@ public class CMerge {
             }
         }
 
+        // the file is replaced only if the merge succeeds, don't truncate it here
+        File writeFile = new File(oFile);
         try {
-            FileOutputStream f = new FileOutputStream(oFile);
+            boolean created = !writeFile.exists();
+            FileOutputStream f = new FileOutputStream(writeFile, true);
             f.close();
+            if (created) {
+                writeFile.delete();
+            }
         } catch (IOException e) {
             throw new CommandLineParserException(i18n.getString("Merge.could.not.create.write.file"));
         }
@@ -179,7 +184,20 @@ public class CMerge {
         }
     }
 
-    private boolean checkAndMerge(CovDocument[] docs, boolean strict) throws XPathExpressionException, ParserConfigurationException {
+    /**
+     * Merges the input reports into the result file. The reports are read
+     * with StAX twice: the first pass checks the inputs and counts the
+     * members of the packages, the second one writes the result. Only the
+     * members of one class are kept in memory.
+     * <p>
+     * The inputs are expected to be sorted as the XML report of APICover is:
+     * classes of a package ordered by name followed by its subpackages
+     * ordered by name. An input which is not sorted, such as a report merged
+     * by an earlier version, is sorted in memory and copied to a temporary
+     * file which is merged instead. Returns false if the inputs can't be
+     * merged, the result file is not written then.
+     */
+    private boolean checkAndMerge() throws XMLStreamException, IOException {
         // check configuration
         Option[] keys = {Option.EXCLUDE_LIST,
                 Option.EXCLUDE_INTERFACES,
@@ -189,328 +207,608 @@ public class CMerge {
                 Option.INCLUDE_CONSTANT_FIELDS,
                 Option.MODE};
 
-        HashMap<String, String> confs = new HashMap<>();
+        Map<String, String> confs = new LinkedHashMap<>();
         for (Option opt : keys) {
             confs.put(opt.getKey(), "NA");
         }
 
-        for (CovDocument d : docs) {
-            for (Option opt : keys) {
-                String key = opt.getKey();
-                String m = d.getConfigValue(key, "no");
-                String o = confs.get(key);
-                if (!o.equals(m)) {
-                    if (o.equals("NA")) {
-                        confs.put(key, m);
-                    } else {
-                        System.err.println("Files contain incompatible heads for " + key);
+        Map<String, int[]> counts = new HashMap<>();
+        List<CovReader> readers = openReaders();
+        try {
+            for (CovReader d : readers) {
+                for (Option opt : keys) {
+                    String key = opt.getKey();
+                    String m = d.getConfigValue(key, "no");
+                    String o = confs.get(key);
+                    if (!o.equals(m)) {
+                        if (o.equals("NA")) {
+                            confs.put(key, m);
+                        } else {
+                            System.err.println("Files contain incompatible heads for " + key);
+                            return false;
+                        }
+                    }
+                }
+            }
+
+            out = null;
+            while (true) {
+                try {
+                    mergeChildren(readers, "", counts);
+                    break;
+                } catch (UnsortedException e) {
+                    closeReaders(readers);
+                    readers = Collections.emptyList();
+                    if (!sortInput(e.fileName)) {
                         return false;
                     }
+                    counts.clear();
+                    readers = openReaders();
                 }
             }
+        } catch (MergeException e) {
+            return false;
+        } finally {
+            closeReaders(readers);
         }
 
-        // create a result document
-        result = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        resultReport = result.createElement(XC.REPORT);
-        result.appendChild(resultReport);
-        Element eHead = result.createElement(XC.HEAD);
-        resultReport.appendChild(eHead);
-        for (Map.Entry<String, String> en : confs.entrySet()) {
-            if (en.getValue().equals("NA")) {
-                continue;
-            }
-            Element e = result.createElement(XC.HEAD_PROPERTY);
-            e.setAttribute(XC.HEAD_PROPERTY_NAME, en.getKey());
-            e.setAttribute(XC.HEAD_PROPERTY_VALUE, en.getValue());
-            eHead.appendChild(e);
-        }
-
-        // check for different versions of the same class
-        // and prepare data for merging
-        Map<String, Element[]> allClasses = new HashMap<>();
-        for (int i = 0; i < docs.length; i++) {
-            CovDocument d = docs[i];
-            for (Element cl : d.getClasses()) {
-                String qName = CovDocument.getQname(cl);
-                if (!allClasses.containsKey(qName)) {
-                    allClasses.put(qName, new Element[docs.length]);
+        // the result replaces the file only if it's complete
+        File result = new File(oFile).getAbsoluteFile();
+        File tmp = File.createTempFile("cmerge", "-" + result.getName(), result.getParentFile());
+        try {
+            write(tmp, confs, counts);
+            Files.move(tmp.toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+        return true;
+    }
+
+    private void write(File file, Map<String, String> confs, Map<String, int[]> counts) throws XMLStreamException, IOException {
+        List<CovReader> readers = openReaders();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            out = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+            out.writeStartDocument("UTF-8", "1.0");
+            depth = 0;
+            startElement(XC.REPORT);
+            startElement(XC.HEAD);
+            for (Map.Entry<String, String> en : confs.entrySet()) {
+                if (en.getValue().equals("NA")) {
+                    continue;
                 }
-                allClasses.get(qName)[i] = cl;
-            }
-        }
-
-        // check and merge
-        for (Map.Entry<String, Element[]> en : allClasses.entrySet()) {
-            String qName = en.getKey();
-            Element[] similarClasses = en.getValue();
-            Set<String> atsG = null;
-            NamedNodeMap classAttributes = null;
-
-            for (Element c : similarClasses) {
-                if (c != null) {
-                    classAttributes = c.getAttributes();
-                    HashSet<String> atsL = new HashSet<>();
-                    for (int i = 0; i < classAttributes.getLength(); i++) {
-                        String aName = classAttributes.item(i).getNodeName();
-                        String aVal = classAttributes.item(i).getNodeValue();
-
-                        // ignore some known attributes
-                        if (!aName.equals(XC.CLASS_NAME)
-                                && !aName.equals(XC.CLASS_MEMBERS)
-                                && !aName.equals(XC.CLASS_TESTED)
-                                && !aName.equals(XC.CLASS_TYPEARGS)) {
-                            atsL.add(aName);
-                        }
-                    }
-                    if (atsG == null) {
-                        atsG = atsL;
-                    } else { // compare modifiers
-                        String m1 = atsG.toString();
-                        String m2 = atsL.toString();
-                        if (!m1.equals(m2)) {
-                            System.err.println("Incompatible attributes for class " + qName + ":");
-                            System.err.println(m1 + " and " + m2);
-                            return false;
-                        }
-                    }
+                emptyElement(XC.HEAD_PROPERTY);
+                out.writeAttribute(XC.HEAD_PROPERTY_NAME, en.getKey());
+                out.writeAttribute(XC.HEAD_PROPERTY_VALUE, en.getValue());
+            }
+            endElement();
+            mergeChildren(readers, "", counts);
+            endElement();
+            out.writeCharacters("\n");
+            out.writeEndDocument();
+            out.close();
+        } catch (MergeException e) {
+            // the inputs were checked by the first pass
+            throw new IllegalStateException(e);
+        } finally {
+            out = null;
+            closeReaders(readers);
+        }
+    }
+
+    private List<CovReader> openReaders() throws XMLStreamException, IOException {
+        List<CovReader> readers = new ArrayList<>();
+        try {
+            for (String iFile : iFiles) {
+                readers.add(new CovReader(iFile));
+            }
+        } catch (XMLStreamException | IOException e) {
+            closeReaders(readers);
+            throw e;
+        }
+        return readers;
+    }
+
+    private static void closeReaders(List<CovReader> readers) {
+        for (CovReader r : readers) {
+            r.close();
+        }
+    }
+
+    /**
+     * Merges the classes and packages of one package, or of the report for
+     * the top level. The readers are positioned at the first child element
+     * and are left at the end of the container. Returns the number of
+     * members and tested members.
+     */
+    private int[] mergeChildren(List<CovReader> readers, String qname, Map<String, int[]> counts)
+            throws XMLStreamException, MergeException {
+        int[] total = new int[2];
+        String name;
+
+        // classes of the package go first
+        while ((name = nextName(readers, XC.CLASS)) != null) {
+            String qName = qname.isEmpty() ? name : qname + "." + name;
+            int[] count = mergeClass(select(readers, XC.CLASS, name), qName);
+            total[0] += count[0];
+            total[1] += count[1];
+        }
+
+        while ((name = nextName(readers, XC.PACKAGE)) != null) {
+            String pName = qname.isEmpty() ? name : qname + "." + name;
+            List<CovReader> group = select(readers, XC.PACKAGE, name);
+            if (out != null) {
+                int[] count = counts.get(pName);
+                startElement(XC.PACKAGE);
+                out.writeAttribute(XC.PACKAGE_NAME, name);
+                out.writeAttribute(XC.PACKAGE_QNAME, pName);
+                out.writeAttribute(XC.PACKAGE_MEMBERS, String.valueOf(count[0]));
+                out.writeAttribute(XC.PACKAGE_TESTED, String.valueOf(count[1]));
+            }
+            for (CovReader r : group) {
+                r.next();
+            }
+            int[] count = mergeChildren(group, pName, counts);
+            for (CovReader r : group) {
+                r.nextSibling(XC.PACKAGE, name);
+            }
+            if (out != null) {
+                endElement();
+            } else {
+                counts.put(pName, count);
+            }
+            total[0] += count[0];
+            total[1] += count[1];
+        }
+
+        for (CovReader r : readers) {
+            if (r.isStart(XC.CLASS)) {
+                // a class follows subpackages
+                throw new UnsortedException(r.fileName);
+            }
+            if (!r.isEnd()) {
+                System.err.println("Unexpected element " + r.getElementName()
+                        + " in file " + r.fileName + " package " + qname);
+                throw new MergeException();
+            }
+        }
+        return total;
+    }
+
+    // the least name of the elements the readers are positioned at
+    private static String nextName(List<CovReader> readers, String element) {
+        String name = null;
+        for (CovReader r : readers) {
+            if (r.isStart(element)) {
+                String n = r.getName();
+                if (name == null || n.compareTo(name) < 0) {
+                    name = n;
                 }
             }
+        }
+        return name;
+    }
+
+    private static List<CovReader> select(List<CovReader> readers, String element, String name) {
+        List<CovReader> group = new ArrayList<>();
+        for (CovReader r : readers) {
+            if (r.isStart(element) && r.getName().equals(name)) {
+                group.add(r);
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Merges the occurrences of the class in the input files and writes the
+     * result in the second pass. Returns the number of members and tested
+     * members.
+     */
+    private int[] mergeClass(List<CovReader> similarClasses, String qName) throws XMLStreamException, MergeException {
+        Set<String> atsG = null;
+        Map<String, String> classAttributes = null;
+        Map<String, Member> members = new LinkedHashMap<>();
+        boolean firstTime = true;
+
+        for (CovReader r : similarClasses) {
+            Map<String, String> attrs = r.getAttributes();
+            Set<String> atsL = new HashSet<>();
+            for (String aName : attrs.keySet()) {
+                // ignore some known attributes
+                if (!aName.equals(XC.CLASS_NAME)
+                        && !aName.equals(XC.CLASS_MEMBERS)
+                        && !aName.equals(XC.CLASS_TESTED)
+                        && !aName.equals(XC.CLASS_TYPEARGS)) {
+                    atsL.add(aName);
+                }
+            }
+            if (atsG == null) {
+                atsG = atsL;
+            } else if (!atsG.equals(atsL)) { // compare modifiers
+                System.err.println("Incompatible attributes for class " + qName + ":");
+                System.err.println(atsG + " and " + atsL);
+                throw new MergeException();
+            }
+            classAttributes = attrs;
+
             // check members
-            HashMap<String, Element> members = new HashMap<>();
-            boolean firstTime = true;
-            for (Element classElement : similarClasses) {
-                if (classElement != null) {
-                    NodeList memberList = classElement.getChildNodes();
-                    for (int i = 0; i < memberList.getLength(); i++) {
-                        Node n = memberList.item(i);
-                        if (n instanceof Element) {
-                            Element member = (Element) n;
-                            String memberID = member.getNodeName() + " "
-                                    + member.getAttribute(XC.MEMBER_NAME) + " "
-                                    + member.getAttribute(XC.MEMBER_SIG);
-
-                            // collect member's attributes
-                            String myAttrsToCheck = getMemberModifsAsString(member);
-                            boolean isCov = Integer.parseInt(member.getAttribute(XC.MEMBER_TESTED)) > 0;
-
-                            if (firstTime) {
-                                members.put(memberID, member);
-                                if (i == memberList.getLength() - 1) {
-                                    // last member
-                                    firstTime = false;
-                                }
-                            } else {
-                                if (strict && !members.containsKey(memberID)) {
-                                    System.err.println("Different members in class class " + qName);
-                                    System.err.println("Member " + memberID);
-                                    return false;
-                                }
-                                if (!members.containsKey(memberID)) {
-                                    // add member
-                                    members.put(memberID, member);
-                                } else {
-                                    String m1 = getMemberModifsAsString(members.get(memberID));
-                                    if (!m1.equals(myAttrsToCheck)) {
-                                        System.err.println("Incompatible member attributes in class " + qName);
-                                        System.err.println("member " + memberID);
-                                        System.err.println(m1 + " and " + myAttrsToCheck);
-                                        return false;
-                                    }
-                                    // update coverage
-                                    if (isCov) {
-                                        Element stored = members.get(memberID);
-                                        stored.setAttribute(XC.MEMBER_TESTED, "1");
-                                    }
-                                }
-                            }
-                        }
+            r.next();
+            while (!r.isEnd()) {
+                Member member = new Member(r.getElementName(), r.getAttributes());
+                r.skipElement();
+                String memberID = member.getID();
+                Member stored = members.get(memberID);
+
+                if (stored == null) {
+                    if (!firstTime && strict) {
+                        System.err.println("Different members in class class " + qName);
+                        System.err.println("Member " + memberID);
+                        throw new MergeException();
+                    }
+                    members.put(memberID, member);
+                } else if (!firstTime) {
+                    Set<String> m1 = stored.getModifiers();
+                    Set<String> m2 = member.getModifiers();
+                    if (!m1.equals(m2)) {
+                        System.err.println("Incompatible member attributes in class " + qName);
+                        System.err.println("member " + memberID);
+                        System.err.println(m1 + " and " + m2);
+                        throw new MergeException();
                     }
+                    // update coverage
+                    stored.add(member);
                 }
             }
-            /// write a class data
-            addClass(qName, classAttributes, members.values());
+            r.nextSibling(XC.CLASS, classAttributes.get(XC.CLASS_NAME));
+            firstTime = false;
         }
-        return true;
+
+        int testedCount = 0;
+        for (Member member : members.values()) {
+            if (member.isTested()) {
+                testedCount++;
+            }
+        }
+
+        /// write a class data
+        if (out != null) {
+            classAttributes.put(XC.CLASS_MEMBERS, String.valueOf(members.size()));
+            classAttributes.put(XC.CLASS_TESTED, String.valueOf(testedCount));
+            startElement(XC.CLASS);
+            writeAttributes(classAttributes);
+            for (Member member : members.values()) {
+                emptyElement(member.kind);
+                writeAttributes(member.attributes);
+            }
+            endElement();
+        }
+        return new int[]{members.size(), testedCount};
     }
 
-    private static String getMemberModifsAsString(Element member) {
-        // collect member's attributes
-        HashSet<String> modifS = new HashSet<>();
-        NamedNodeMap attrs = member.getAttributes();
-        for (int j = 0; j < attrs.getLength(); j++) {
-            String aName = attrs.item(j).getNodeName();
+    /**
+     * Replaces the input file which is not sorted with its sorted copy.
+     * Returns false if the file is a sorted copy already, its elements are
+     * duplicated then.
+     */
+    private boolean sortInput(String fileName) throws XMLStreamException, IOException {
+        for (Map.Entry<File, String> e : sortedCopies.entrySet()) {
+            if (e.getKey().getPath().equals(fileName)) {
+                System.err.println("File " + e.getValue() + " contains duplicate elements");
+                return false;
+            }
+        }
+        System.err.println("File " + fileName + " is not sorted, it is sorted in memory");
 
-            // ignore some known attributes
-            if (!aName.equals(XC.MEMBER_NAME)
-                    && !aName.equals(XC.MEMBER_TYPE)
-                    && !aName.equals(XC.MEMBER_SIG)
-                    && !aName.equals(XC.MEMBER_TESTED)
-                    && !aName.equals(XC.MEMBER_VMSIG)) {
-                modifS.add(aName);
+        Node report;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+            XMLStreamReader reader = createReader(in);
+            try {
+                reader.nextTag();
+                report = new Node(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        report.sort();
+
+        File copy = File.createTempFile("cmerge", ".xml");
+        sortedCopies.put(copy, fileName);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(copy))) {
+            XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+            w.writeStartDocument("UTF-8", "1.0");
+            report.write(w);
+            w.writeEndDocument();
+            w.close();
+        }
+        for (int i = 0; i < iFiles.length; i++) {
+            if (iFiles[i].equals(fileName)) {
+                iFiles[i] = copy.getPath();
+                break;
             }
         }
-        return modifS.toString();
+        return true;
     }
 
-    private static void saveToXml(Document d, String oFile) throws TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+    private void writeAttributes(Map<String, String> attributes) throws XMLStreamException {
+        for (Map.Entry<String, String> a : attributes.entrySet()) {
+            out.writeAttribute(a.getKey(), a.getValue());
+        }
+    }
 
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+    private void startElement(String name) throws XMLStreamException {
+        indent();
+        out.writeStartElement(name);
+        depth++;
+    }
 
-        DOMSource source = new DOMSource(d);
-        StreamResult sresult = new StreamResult(new File(oFile));
-        transformer.transform(source, sresult);
+    private void emptyElement(String name) throws XMLStreamException {
+        indent();
+        out.writeEmptyElement(name);
     }
 
-    private void addClass(String qName, NamedNodeMap classAttributes, Collection<Element> members) {
-        try {
-            Element pck = createPackagesFor(qName);
-            Element cl = result.createElement(XC.CLASS);
-            for (int i = 0; i < classAttributes.getLength(); i++) {
-                String aName = classAttributes.item(i).getNodeName();
-                String aVal = classAttributes.item(i).getNodeValue();
-                cl.setAttribute(aName, aVal);
-            }
-            int memberCount = 0;
-            int testedCount = 0;
-            for (Element member : members) {
-                Element newM = result.createElement(member.getNodeName());
-                NamedNodeMap membAttributes = member.getAttributes();
-                for (int i = 0; i < membAttributes.getLength(); i++) {
-                    String aName = membAttributes.item(i).getNodeName();
-                    String aVal = membAttributes.item(i).getNodeValue();
-                    newM.setAttribute(aName, aVal);
-                    if (aName.equals(XC.MEMBER_TESTED) && aVal.equals("1")) {
-                        testedCount++;
-                    }
-                }
-                cl.appendChild(newM);
-                memberCount++;
-                cl.setAttribute(XC.CLASS_MEMBERS, String.valueOf(memberCount));
-                cl.setAttribute(XC.CLASS_TESTED, String.valueOf(testedCount));
-            }
-            pck.appendChild(cl);
-            updateCounters(pck, memberCount, testedCount);
-        } catch (XPathExpressionException ex) {
-            SwissKnife.reportThrowable(ex);
+    private void endElement() throws XMLStreamException {
+        depth--;
+        indent();
+        out.writeEndElement();
+    }
+
+    private void indent() throws XMLStreamException {
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
         }
+        out.writeCharacters(sb.toString());
     }
 
-    private Element createPackagesFor(String qName) throws XPathExpressionException {
-        StringTokenizer st = new StringTokenizer(qName, ".");
-        int parts = st.countTokens();
-        int pn = 1;
-        String path = "/" + XC.REPORT + "/" + XC.PACKAGE + "[@" + XC.PACKAGE_NAME + "='']";
-        Element packageE = checkForPackage(path, "", resultReport);
-        while (st.hasMoreTokens() && pn < parts) {
-            String pnm = st.nextToken().trim();
-            // /report/package[@name='']/package[@name='java']/package[@name='lang']  ...
-            path = path + "/" + XC.PACKAGE + "[@" + XC.PACKAGE_NAME + "='" + pnm + "']";
-            packageE = checkForPackage(path, pnm, packageE);
-            pn++;
-        }
-        return packageE;
+    private static int getInt(Map<String, String> attributes, String name) {
+        String value = attributes.get(name);
+        return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
     }
 
-    private Element checkForPackage(String path, String name, Element parentPkg) throws XPathExpressionException {
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile(path);
-        Element par = (Element) expr.evaluate(result, XPathConstants.NODE);
-        if (par == null) {
-            par = result.createElement(XC.PACKAGE);
-            par.setAttribute(XC.PACKAGE_NAME, name);
-            par.setAttribute(XC.PACKAGE_MEMBERS, "0");
-            par.setAttribute(XC.PACKAGE_TESTED, "0");
-            parentPkg.appendChild(par);
-        }
-        return par;
+    /**
+     * Merge failure, the reason is already reported.
+     */
+    private static class MergeException extends Exception {
+
+        private static final long serialVersionUID = 7043518960423856912L;
     }
 
-    private static void updateCounters(Element pck, int memberCount, int testedCount) {
-        Element p = pck;
-        while (p.getNodeName().equals(XC.PACKAGE)) {
-            int count = Integer.parseInt(p.getAttribute(XC.PACKAGE_MEMBERS)) + memberCount;
-            int tested = Integer.parseInt(p.getAttribute(XC.PACKAGE_TESTED)) + testedCount;
-            p.setAttribute(XC.PACKAGE_MEMBERS, String.valueOf(count));
-            p.setAttribute(XC.PACKAGE_TESTED, String.valueOf(tested));
-            p = (Element) p.getParentNode();
+    /**
+     * Merge failure because the input file is not sorted
+     */
+    private static class UnsortedException extends MergeException {
+
+        private static final long serialVersionUID = -2581432337815474470L;
+        final String fileName;
+
+        UnsortedException(String fileName) {
+            this.fileName = fileName;
         }
     }
 
-    private static class CovDocument {
+    private static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(in);
+    }
 
-        DocumentBuilder builder;
-        Document doc;
-        final XPathFactory xPathfactory = XPathFactory.newInstance();
-        String fileName;
+    private static Map<String, String> getAttributes(XMLStreamReader reader) {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attrs.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return attrs;
+    }
 
-        public CovDocument(String fileName) throws ParserConfigurationException, SAXException, IOException {
-            builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            doc = builder.parse(fileName);
-            this.fileName = fileName;
+    /**
+     * Element of a report read into memory to be sorted
+     */
+    private static class Node {
+
+        final String element;
+        final Map<String, String> attributes;
+        final List<Node> children = new ArrayList<>();
+
+        // reads the element the reader is positioned at, the reader is left
+        // at the end of the element
+        Node(XMLStreamReader reader) throws XMLStreamException {
+            element = reader.getLocalName();
+            attributes = getAttributes(reader);
+            while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+                children.add(new Node(reader));
+            }
         }
 
-        public String getConfigValue(String key, String def) throws XPathExpressionException {
-            XPath xpath = xPathfactory.newXPath();
-            XPathExpression expr = xpath.compile("/" + XC.REPORT
-                    + "/" + XC.HEAD
-                    + "/" + XC.HEAD_PROPERTY);
-            NodeList nl = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-            for (int i = 0; i < nl.getLength(); i++) {
-                Element h = (Element) nl.item(i);
-                if (h.getAttribute(XC.HEAD_PROPERTY_NAME).equals(key)) {
-                    String v = h.getAttribute(XC.HEAD_PROPERTY_VALUE);
-                    if (v == null || v.isEmpty()) {
-                        return def;
-                    } else {
-                        return v;
+        // orders children of the report and of packages: other elements such
+        // as the head go first, then classes and packages ordered by name
+        void sort() {
+            Collections.sort(children, new Comparator<Node>() {
+                public int compare(Node n1, Node n2) {
+                    int comp = n1.rank() - n2.rank();
+                    if (comp == 0 && n1.rank() > 0) {
+                        comp = n1.getName().compareTo(n2.getName());
                     }
+                    return comp;
+                }
+            });
+            for (Node n : children) {
+                if (n.element.equals(XC.PACKAGE)) {
+                    n.sort();
                 }
             }
-            return def;
         }
 
-        private Set<Element> getClasses() throws XPathExpressionException {
-            return getElementsByKind(XC.CLASS);
+        private int rank() {
+            return element.equals(XC.CLASS) ? 1 : element.equals(XC.PACKAGE) ? 2 : 0;
         }
 
-        private Set<Element> getElementsByKind(String name) throws XPathExpressionException {
-            Set<Element> result = new HashSet<>();
-            XPath xpath = xPathfactory.newXPath();
-            XPathExpression expr = xpath.compile("//" + name);
-            NodeList nl = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-            for (int i = 0; i < nl.getLength(); i++) {
-                result.add((Element) nl.item(i));
+        private String getName() {
+            String name = attributes.get(XC.PACKAGE_NAME);
+            return name == null ? "" : name;
+        }
+
+        void write(XMLStreamWriter w) throws XMLStreamException {
+            if (children.isEmpty()) {
+                w.writeEmptyElement(element);
+            } else {
+                w.writeStartElement(element);
+            }
+            for (Map.Entry<String, String> a : attributes.entrySet()) {
+                w.writeAttribute(a.getKey(), a.getValue());
+            }
+            for (Node n : children) {
+                n.write(w);
+            }
+            if (!children.isEmpty()) {
+                w.writeEndElement();
             }
-            return result;
         }
+    }
 
-        private static String getQname(Element e) {
-            StringBuilder qName = new StringBuilder(e.getAttribute(XC.PACKAGE_NAME));
-            Node parentNode;
-            Node currNode = e;
-            while ((parentNode = currNode.getParentNode()) != null) {
-                if (!(parentNode instanceof Element)) {
-                    break;
+    private static class Member {
+
+        final String kind;
+        final Map<String, String> attributes;
+
+        Member(String kind, Map<String, String> attributes) {
+            this.kind = kind;
+            this.attributes = attributes;
+        }
+
+        String getID() {
+            return kind + " " + attributes.get(XC.MEMBER_NAME) + " " + attributes.get(XC.MEMBER_SIG);
+        }
+
+        boolean isTested() {
+            return getInt(attributes, XC.MEMBER_TESTED) > 0;
+        }
+
+        Set<String> getModifiers() {
+            // collect member's attributes
+            Set<String> modifS = new HashSet<>();
+            for (String aName : attributes.keySet()) {
+                // ignore some known attributes
+                if (!aName.equals(XC.MEMBER_NAME)
+                        && !aName.equals(XC.MEMBER_TYPE)
+                        && !aName.equals(XC.MEMBER_SIG)
+                        && !aName.equals(XC.MEMBER_TESTED)
+                        && !aName.equals(XC.MEMBER_VMSIG)) {
+                    modifS.add(aName);
                 }
-                Element p = (Element) parentNode;
-                if (!p.getNodeName().equals(XC.PACKAGE)
-                        && !p.getNodeName().equals(XC.CLASS)) {
-                    break;
+            }
+            return modifS;
+        }
+
+        // adds the coverage of the same member from another report
+        void add(Member other) {
+            if (other.isTested()) {
+                attributes.put(XC.MEMBER_TESTED, "1");
+            }
+            if (attributes.containsKey(XC.MEMBER_REFCOUNT)) {
+                int refs = getInt(attributes, XC.MEMBER_REFCOUNT) + getInt(other.attributes, XC.MEMBER_REFCOUNT);
+                attributes.put(XC.MEMBER_REFCOUNT, String.valueOf(refs));
+            }
+        }
+    }
+
+    /**
+     * Coverage report read element by element. The reader is always
+     * positioned at a start or end element.
+     */
+    private static class CovReader {
+
+        final String fileName;
+        private final InputStream in;
+        private final XMLStreamReader reader;
+        private final Map<String, String> head = new HashMap<>();
+
+        CovReader(String fileName) throws XMLStreamException, IOException {
+            this.fileName = fileName;
+            in = new BufferedInputStream(new FileInputStream(fileName));
+            try {
+                reader = createReader(in);
+                reader.nextTag();   // report
+                reader.nextTag();
+                if (isStart(XC.HEAD)) {
+                    reader.nextTag();
+                    while (isStart(XC.HEAD_PROPERTY)) {
+                        String key = reader.getAttributeValue(null, XC.HEAD_PROPERTY_NAME);
+                        if (!head.containsKey(key)) {
+                            head.put(key, reader.getAttributeValue(null, XC.HEAD_PROPERTY_VALUE));
+                        }
+                        skipElement();
+                    }
+                    reader.nextTag();
                 }
-                String pName = p.getAttribute(XC.PACKAGE_NAME);
-                if (pName != null && pName.isEmpty()) {
-                    break;
+            } catch (XMLStreamException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        String getConfigValue(String key, String def) {
+            String v = head.get(key);
+            if (v == null || v.isEmpty()) {
+                return def;
+            } else {
+                return v;
+            }
+        }
+
+        boolean isStart(String element) {
+            return reader.isStartElement() && reader.getLocalName().equals(element);
+        }
+
+        boolean isEnd() {
+            return reader.isEndElement();
+        }
+
+        String getElementName() {
+            return reader.getLocalName();
+        }
+
+        String getName() {
+            String name = reader.getAttributeValue(null, XC.PACKAGE_NAME);
+            return name == null ? "" : name;
+        }
+
+        Map<String, String> getAttributes() {
+            return CMerge.getAttributes(reader);
+        }
+
+        void next() throws XMLStreamException {
+            reader.nextTag();
+        }
+
+        // moves from the start of the current element to the next sibling
+        void skipElement() throws XMLStreamException {
+            int level = 1;
+            while (level > 0) {
+                if (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+                    level++;
+                } else {
+                    level--;
                 }
-                qName.insert(0, pName + ".");
-                currNode = p;
             }
-            return qName.toString();
+            reader.nextTag();
+        }
+
+        // moves from the end of the element to the next sibling,
+        // which must not precede the element
+        void nextSibling(String element, String name) throws XMLStreamException, MergeException {
+            reader.nextTag();
+            if (isStart(element) && getName().compareTo(name) <= 0) {
+                throw new UnsortedException(fileName);
+            }
+        }
+
+        void close() {
+            try {
+                reader.close();
+                in.close();
+            } catch (XMLStreamException | IOException e) {
+                // nothing to do
+            }
         }
     }
 }
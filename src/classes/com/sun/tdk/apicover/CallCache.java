@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.apicover;
+
+import com.sun.tdk.signaturetest.model.ConstructorDescr;
+import com.sun.tdk.signaturetest.model.FieldDescr;
+import com.sun.tdk.signaturetest.model.MemberDescription;
+import com.sun.tdk.signaturetest.model.MethodDescr;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent cache of the calls found in the test classes. A class is
+ * scanned again only if its class file or the call filter changed.
+ * <p>
+ * The cache file stores the strings of all calls once, followed by
+ * the digest of each class file and its calls as string indexes.
+ * Runs counting different shards of the test suite may share the file,
+ * each of them replaces only the entries of its own shard. They lock the
+ * file {@code <cache>.lock} next to it while saving. The lock file is left
+ * in place: a run waiting for the lock of a deleted file wouldn't exclude
+ * a run creating the file again.
+ */
+public class CallCache {
+
+    private static final int MAGIC = 0x41434331;
+    private static final int VERSION = 1;
+    private static final String DIGEST = "SHA-256";
+
+    private static final byte FIELD = 'F';
+    private static final byte METHOD = 'M';
+    private static final byte CONSTRUCTOR = 'C';
+
+    private final String fileName;
+    private final byte[] config;
+    private final int shard;
+    private final int shards;
+    // entries read from the cache file
+    private final Map<String, Entry> cached = new HashMap<>();
+    // entries of the classes found in this run, they replace the entries of this shard
+    private final Map<String, Entry> found = new TreeMap<>();
+
+    /**
+     * @param config describes the filtering applied to the cached calls
+     */
+    public CallCache(String fileName, String config) {
+        this(fileName, config, 0, 1);
+    }
+
+    /**
+     * @param shard  zero based index of the TS shard counted in this run
+     * @param shards number of the TS shards
+     */
+    public CallCache(String fileName, String config, int shard, int shards) {
+        this.fileName = fileName;
+        this.shard = shard;
+        this.shards = shards;
+        try {
+            this.config = digest(config.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the cache file if it exists. A file written for another
+     * call filter is ignored.
+     */
+    public void load() throws IOException {
+        cached.putAll(read(new File(fileName)));
+    }
+
+    private Map<String, Entry> read(File f) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!f.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(fileName);
+            }
+            byte[] conf = new byte[config.length];
+            in.readFully(conf);
+            if (!Arrays.equals(conf, config)) {
+                return entries;
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] digest = new byte[config.length];
+                in.readFully(digest);
+                Entry e = new Entry(digest, in.readInt());
+                for (int j = 0; j < e.kinds.length; j++) {
+                    e.kinds[j] = in.readByte();
+                    for (int k = 0; k < 3; k++) {
+                        int index = in.readInt();
+                        if (index < 0 || index >= strings.length) {
+                            throw new IOException(fileName);
+                        }
+                        e.parts[3 * j + k] = strings[index];
+                    }
+                }
+                entries.put(name, e);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the calls of the classes found in this run to the cache file.
+     * The entries of the other shards are read again and kept, the file is
+     * locked meanwhile. It is replaced only when it is completely written.
+     */
+    public void save() throws IOException {
+        File f = new File(fileName).getAbsoluteFile();
+        Map<String, Entry> entries = new TreeMap<>();
+        if (shards <= 1) {
+            entries.putAll(found);
+            replace(f, entries);
+            return;
+        }
+        // only the runs counting shards may share the file
+        try (FileChannel ch = FileChannel.open(new File(f.getPath() + ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                try {
+                    for (Map.Entry<String, Entry> en : read(f).entrySet()) {
+                        if (!Main.isShardMember(en.getKey(), shard, shards)) {
+                            entries.put(en.getKey(), en.getValue());
+                        }
+                    }
+                } catch (IOException e) {
+                    // a broken file is rewritten with the entries of this shard
+                }
+                entries.putAll(found);
+                replace(f, entries);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // the cache file is replaced only when the new one is completely written
+    private void replace(File f, Map<String, Entry> entries) throws IOException {
+        File tmp = File.createTempFile("apicover", "-" + f.getName(), f.getParentFile());
+        try {
+            write(tmp, entries);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private void write(File f, Map<String, Entry> entries) throws IOException {
+        Map<String, Integer> index = new LinkedHashMap<>();
+        for (Entry e : entries.values()) {
+            for (String s : e.parts) {
+                if (!index.containsKey(s)) {
+                    index.put(s, index.size());
+                }
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(config);
+
+            out.writeInt(index.size());
+            for (String s : index.keySet()) {
+                out.writeUTF(s);
+            }
+
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> en : entries.entrySet()) {
+                Entry e = en.getValue();
+                out.writeUTF(en.getKey());
+                out.write(e.digest);
+                out.writeInt(e.kinds.length);
+                for (int j = 0; j < e.kinds.length; j++) {
+                    out.writeByte(e.kinds[j]);
+                    for (int k = 0; k < 3; k++) {
+                        out.writeInt(index.get(e.parts[3 * j + k]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached calls of the class or null if the class file
+     * with the given digest was not scanned before.
+     */
+    public synchronized List<MemberDescription> getCalls(String name, byte[] digest) {
+        Entry e = cached.get(name);
+        if (e == null || !Arrays.equals(e.digest, digest)) {
+            return null;
+        }
+        found.put(name, e);
+        return e.toCalls();
+    }
+
+    public synchronized void putCalls(String name, byte[] digest, List<MemberDescription> calls) {
+        found.put(name, new Entry(digest, calls));
+    }
+
+    public static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance(DIGEST).digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+
+        final byte[] digest;
+        final byte[] kinds;
+        // declaring class, name and arguments of each call
+        final String[] parts;
+
+        Entry(byte[] digest, int size) {
+            this.digest = digest;
+            this.kinds = new byte[size];
+            this.parts = new String[3 * size];
+        }
+
+        Entry(byte[] digest, List<MemberDescription> calls) {
+            this(digest, calls.size());
+            int i = 0;
+            for (MemberDescription md : calls) {
+                kinds[i] = md.isField() ? FIELD : md.isConstructor() ? CONSTRUCTOR : METHOD;
+                parts[3 * i] = md.getDeclaringClassName();
+                parts[3 * i + 1] = md.getName();
+                parts[3 * i + 2] = md.getArgs();
+                i++;
+            }
+        }
+
+        List<MemberDescription> toCalls() {
+            List<MemberDescription> calls = new ArrayList<>(kinds.length);
+            for (int i = 0; i < kinds.length; i++) {
+                String className = parts[3 * i];
+                String name = parts[3 * i + 1];
+                MemberDescription md;
+                if (kinds[i] == FIELD) {
+                    md = new FieldDescr(name, className, 1);
+                } else {
+                    if (kinds[i] == CONSTRUCTOR) {
+                        ConstructorDescr c = new ConstructorDescr();
+                        c.setupConstuctorName(className);
+                        c.setModifiers(1);
+                        md = c;
+                    } else {
+                        md = new MethodDescr(name, className, 1);
+                    }
+                    md.setArgs(parts[3 * i + 2]);
+                }
+                calls.add(md);
+            }
+            return calls;
+        }
+    }
+}
@@ -31,26 +31,43 @@ import com.sun.tdk.signaturetest.model.*;
 
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
- * Filters invocations based on -FilterMap rules
+ * Filters invocations based on -FilterMap and -FilterSig rules
  *
  * @author Mikhail Ershov
  */
 public class CallFilter {
 
     private final ApicovOptions ao = AppContext.getContext().getBean(ApicovOptions.class);
-    private List<String> mapFilters = null;
-    private List<String> sigFilters = null;
+    private List<MapFilter> mapFilters = null;
+    private List<Pattern> sigFilters = null;
     private PrintWriter pw;
 
     public boolean init(PrintWriter printWriter) {
 
-        if (ao.getValue(Option.FILTERMAP) != null) {
-            mapFilters = ao.getValues(Option.FILTERMAP);
+        List<String> filters = ao.getValues(Option.FILTERMAP);
+        if (filters != null && !filters.isEmpty()) {
+            mapFilters = new ArrayList<>();
+            for (String filter : filters) {
+                mapFilters.add(new MapFilter(filter));
+            }
         }
-        if (ao.getValue(Option.FILTERSIG) != null) {
-            sigFilters = ao.getValues(Option.FILTERSIG);
+        filters = ao.getValues(Option.FILTERSIG);
+        if (filters != null && !filters.isEmpty()) {
+            sigFilters = new ArrayList<>();
+            try {
+                for (String filter : filters) {
+                    if (filter != null && !filter.isEmpty()) {
+                        sigFilters.add(Pattern.compile(filter));
+                    }
+                }
+            } catch (PatternSyntaxException e) {
+                return false;
+            }
         }
 
         pw = printWriter;
@@ -58,50 +75,62 @@ public class CallFilter {
         return true;
     }
 
+    /**
+     * Returns true if filtering prints the matched calls, so test classes
+     * have to be filtered in their order.
+     */
+    public boolean isOrdered() {
+        return mapFilters == null && sigFilters != null;
+    }
 
-    private boolean hasNoFilter() {
-        return (mapFilters == null || mapFilters.isEmpty()) &&
-                (sigFilters == null || sigFilters.isEmpty());
+    /**
+     * Returns the rules applied to the calls of a test class before they
+     * are counted. FilterSig rules are applied when the calls are counted.
+     */
+    public String getConfig() {
+        List<String> filters = ao.getValues(Option.FILTERMAP);
+        return mapFilters == null || filters == null ? "" : filters.toString();
     }
 
     public List<MemberDescription> filterCalls(List<MemberDescription> foundCalls, String testClassName) {
-        if (hasNoFilter()) {
-            return foundCalls;
-        }
 
-        if (mapFilters != null && !mapFilters.isEmpty()) {
-            List<MemberDescription> filteredCalls = new ArrayList<>();
-            for (String filter : mapFilters) {
-                Iterator<MemberDescription> mi = foundCalls.iterator();
-                while (mi.hasNext()) {
-                    MemberDescription md = mi.next();
-                    String apiClass = md.getDeclaringClassName();
-                    int dollar = apiClass.indexOf('$');
-                    if (dollar >= 0) {
-                        apiClass = apiClass.substring(0, dollar);
-                    }
-                    String pkg = ClassDescription.getPackageName(apiClass);
-                    String cls = ClassDescription.getClassShortName(apiClass);
+        if (mapFilters != null) {
+            // index of the first filter accepting the call, each filter
+            // is evaluated once per API class
+            Map<String, Integer> accepted = new HashMap<>();
+            int[] filterIndex = new int[foundCalls.size()];
+            int i = 0;
+            for (MemberDescription md : foundCalls) {
+                String apiClass = md.getDeclaringClassName();
+                Integer index = accepted.get(apiClass);
+                if (index == null) {
+                    index = findFilter(apiClass, testClassName);
+                    accepted.put(apiClass, index);
+                }
+                filterIndex[i++] = index;
+            }
 
-                    if (accept(filter, pkg, cls, testClassName)) {
+            // calls go in the order of the filters which accepted them
+            List<MemberDescription> filteredCalls = new ArrayList<>();
+            for (int f = 0; f < mapFilters.size(); f++) {
+                i = 0;
+                for (MemberDescription md : foundCalls) {
+                    if (filterIndex[i++] == f) {
                         filteredCalls.add(md);
-                        mi.remove();
                     }
                 }
             }
             return filteredCalls;
         }
 
-        if (sigFilters != null && !sigFilters.isEmpty()) {
+        if (sigFilters != null) {
             Set<String> filteredSigs = new TreeSet<>();
-            for (String filter : sigFilters) {
-                if (filter == null || filter.isEmpty()) {
-                    continue;
-                }
-                for (MemberDescription md : foundCalls) {
-                    String sig = getMemberSignature(md);
-                    if (sig.matches(filter)) {
+            for (MemberDescription md : foundCalls) {
+                String sig = getMemberSignature(md);
+                for (Pattern filter : sigFilters) {
+                    if (filter.matcher(sig).matches()) {
                         filteredSigs.add(sig);
+                        break;
                     }
                 }
             }
@@ -114,28 +143,70 @@ public class CallFilter {
             return Collections.emptyList();
         }
 
-        return null;
-
+        return foundCalls;
     }
 
-    private static boolean accept(String pattern, String pkg, String cls, String testClassName) {
-        String PKG_PATTERN = "API_PACKAGE";
-        pattern = simpleReplaceAll(pattern, PKG_PATTERN, pkg);
-        String CLS_PATTERN = "API_CLASS";
-        pattern = simpleReplaceAll(pattern, CLS_PATTERN, cls);
-        return testClassName.startsWith(pattern);
+    private int findFilter(String apiClass, String testClassName) {
+        int dollar = apiClass.indexOf('$');
+        if (dollar >= 0) {
+            apiClass = apiClass.substring(0, dollar);
+        }
+
+        for (int f = 0; f < mapFilters.size(); f++) {
+            if (mapFilters.get(f).accept(apiClass, testClassName)) {
+                return f;
+            }
+        }
+        return -1;
     }
 
-    private static String simpleReplaceAll(String string, String search, String replace) {
-        int p = 0;
-        while ((p = string.indexOf(search, p)) >= 0) {
-            String s1 = string.substring(0, p);
-            int newP = p + search.length();
-            String s2 = string.substring(newP);
-            string = s1 + replace + s2;
-            p = ++newP;
+    /**
+     * -FilterMap rule: the test class name must start with the pattern
+     * where API_PACKAGE and API_CLASS are replaced with the package and
+     * the simple name of the called API class. The replaced pattern is
+     * built once per API class.
+     */
+    private static class MapFilter {
+
+        private static final String PKG_PATTERN = "API_PACKAGE";
+        private static final String CLS_PATTERN = "API_CLASS";
+
+        private final String pattern;
+        private final boolean hasPlaceholders;
+        // replaced patterns by the top level API class, filters are
+        // shared by the threads scanning the test classes
+        private final Map<String, String> replaced = new ConcurrentHashMap<>();
+
+        MapFilter(String pattern) {
+            this.pattern = pattern;
+            hasPlaceholders = pattern.contains(PKG_PATTERN) || pattern.contains(CLS_PATTERN);
+        }
+
+        boolean accept(String apiClass, String testClassName) {
+            if (!hasPlaceholders) {
+                return testClassName.startsWith(pattern);
+            }
+            String p = replaced.get(apiClass);
+            if (p == null) {
+                String pkg = ClassDescription.getPackageName(apiClass);
+                String cls = ClassDescription.getClassShortName(apiClass);
+                p = simpleReplaceAll(simpleReplaceAll(pattern, PKG_PATTERN, pkg), CLS_PATTERN, cls);
+                replaced.put(apiClass, p);
+            }
+            return testClassName.startsWith(p);
+        }
+
+        private static String simpleReplaceAll(String string, String search, String replace) {
+            int p = 0;
+            while ((p = string.indexOf(search, p)) >= 0) {
+                String s1 = string.substring(0, p);
+                int newP = p + search.length();
+                String s2 = string.substring(newP);
+                string = s1 + replace + s2;
+                p = ++newP;
+            }
+            return string;
         }
-        return string;
     }
 
     private static String getMemberSignature(MemberDescription md) {
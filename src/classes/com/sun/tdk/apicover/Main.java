@@ -41,8 +41,18 @@ import com.sun.tdk.signaturetest.core.MemberCollectionBuilder.BuildMode;
 import com.sun.tdk.signaturetest.sigfile.FileManager;
 
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main implements Log {
 
@@ -59,6 +69,9 @@ public class Main implements Log {
     static protected boolean debug = false;
     public final static int DefaultCacheSize = 4096;
     private boolean isWorstCaseMode = true; // worst case is default
+    private int threads = 1;
+    private int shard = 0;
+    private int shards = 1;
     protected ClasspathImpl classpath;
 
     /**
@@ -76,6 +89,7 @@ public class Main implements Log {
     private final PackageGroup excludedPackages = new PackageGroup(true);
 
     private final CallFilter callFilter = new CallFilter();
+    private CallCache callCache;
 
     /**
      * Run the test using command-line; return status via numeric exit code.
@@ -168,13 +182,18 @@ public class Main implements Log {
         }
 
         ts = ao.getValue(Option.TS);
-        reporter.addConfig(Option.TS.getKey(), ts);
-
-        try {
-            classpath = new ClasspathImpl(ts);
-        } catch (SecurityException e) {
-            debug(e);
-            log.println(i18n.getString("Main.error.sec.newclasses"));
+        if (ts != null) {
+            reporter.addConfig(Option.TS.getKey(), ts);
+
+            try {
+                classpath = new ClasspathImpl(ts);
+            } catch (SecurityException e) {
+                debug(e);
+                log.println(i18n.getString("Main.error.sec.newclasses"));
+            }
+        } else if (ao.getValues(Option.COUNTS) == null) {
+            // counts of the TS shards may be reported without TS
+            error(i18n.getString("Main.error.option.required", Option.TS.getKey()));
         }
 
         signatureFile = ao.getValue(Option.API);
@@ -256,6 +275,36 @@ public class Main implements Log {
             }
         }
 
+        {
+            String n = ao.getValue(Option.THREADS);
+            if (n != null) {
+                try {
+                    threads = Integer.parseInt(n);
+                    if (threads < 1) {
+                        throw new NumberFormatException();
+                    }
+                } catch (NumberFormatException e) {
+                    error(i18n.getString("Main.error.arg.invalid", Option.THREADS.getKey()));
+                }
+            }
+        }
+
+        {
+            String s = ao.getValue(Option.SHARD);
+            if (s != null) {
+                try {
+                    int pos = s.indexOf('/');
+                    shard = Integer.parseInt(s.substring(0, pos)) - 1;
+                    shards = Integer.parseInt(s.substring(pos + 1));
+                    if (shard < 0 || shard >= shards) {
+                        throw new NumberFormatException();
+                    }
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    error(i18n.getString("Main.error.arg.invalid", Option.SHARD.getKey()));
+                }
+            }
+        }
+
         {
             List<String> excludes = ao.getValues(Option.EXCLUDE_LIST);
             if (excludes != null) {
@@ -269,6 +318,13 @@ public class Main implements Log {
             error(i18n.getString("Main.error.initfilter"));
         }
 
+        {
+            String cache = ao.getValue(Option.CACHE);
+            if (cache != null) {
+                callCache = new CallCache(cache, callFilter.getConfig(), shard, shards);
+            }
+        }
+
         if (ao.isSet(Option.HELP)) {
             version();
             usage();
@@ -299,6 +355,16 @@ public class Main implements Log {
                 && (packagesTS.checkName(name) || purePackagesTS.checkName(name));
     }
 
+    // all TS classes are loaded to resolve the calls, but only the calls
+    // of the shard classes are counted
+    private boolean isShardMember(String name) {
+        return isShardMember(name, shard, shards);
+    }
+
+    static boolean isShardMember(String name, int shard, int shards) {
+        return shards == 1 || (name.hashCode() & Integer.MAX_VALUE) % shards == shard;
+    }
+
     private static void version() {
         System.err.println("API Cover Tool -  SignatureTest version " + Version.Number);
     }
@@ -324,6 +390,11 @@ public class Main implements Log {
                 nl + i18n.getString("Main.usage.detail", Option.DETAIL) +
                 nl + i18n.getString("Main.usage.format", Option.FORMAT) +
                 nl + i18n.getString("Main.usage.report", Option.REPORT) +
+                nl + i18n.getString("Main.usage.threads", Option.THREADS) +
+                nl + i18n.getString("Main.usage.cache", Option.CACHE) +
+                nl + i18n.getString("Main.usage.shard", Option.SHARD) +
+                nl + i18n.getString("Main.usage.counts", Option.COUNTS) +
+                nl + i18n.getString("Main.usage.writeCounts", Option.WRITE_COUNTS) +
                 nl + i18n.getString("Main.usage.debug", Option.DEBUG) +
                 nl + i18n.getString("Main.usage.help", Option.HELP) +
                 nl + i18n.getString("Main.usage.version", Option.VERSION) +
@@ -369,49 +440,19 @@ public class Main implements Log {
                 }
 
             }
-            /*
-             * Read TS and send each call to reporter.
-             */
-            BinaryClassDescrLoader tsLoader = new BinaryClassDescrLoader(classpath,
-                    DefaultCacheSize);
-
-            tsLoader.setLog(log);
-            tsLoader.setIgnoreAnnotations(true);
-            ClassHierarchy tsHierarchy = new ClassHierarchyImpl(tsLoader,
-                    ClassHierarchy.ALL_PUBLIC);
-            int size = 0;
-            List<MemberDescription> calls = new ArrayList<>();
-            while (classpath.hasNext()) {
-                String name = classpath.nextClassName();
-                if (!isTSMember(name)) {
-                    continue;
-                }
+            int size = ts == null ? 0 : scanTS();
+            size += readCounts();
 
+            String counts = ao.getValue(Option.WRITE_COUNTS);
+            if (counts != null) {
                 try {
-                    ClassDescription tsClass = tsHierarchy.load(name);
-                    refCounter.addTSClass(tsClass, false);
-                    List<MemberDescription> fCalls = tsLoader.loadCalls(name);
-                    fCalls = callFilter.filterCalls(fCalls, name);
-                    calls.addAll(fCalls);
-                } catch (ClassNotFoundException | ClassFormatError e) {
-                    if (debug) {
-                        log.println(i18n.getString("Main.warning.class.invalid", name));
-                    }
+                    refCounter.writeCounts(counts);
+                } catch (IOException e) {
                     debug(e);
-                } catch (Throwable t) {
-                    debug(t);
-                    error(i18n.getString("Main.error.check", t.getMessage()));
+                    error(i18n.getString("Main.error.counts.write", counts));
                 }
-
-            }
-            //classpath.close();
-            for (MemberDescription md : calls) {
-                size++;
-                refCounter.addRef(md);
-            }
-
-            if (!searachOnly()) {
-                if (size == 0) {
+            } else if (!searachOnly()) {
+                if (size == 0 && ts != null) {
                     System.err.println(i18n.getString("Main.warning.ts.empty", ts));
                 }
 
@@ -424,6 +465,253 @@ public class Main implements Log {
         }
     }
 
+    /**
+     * Reads TS and sends each call to reporter, returns the number of calls.
+     */
+    private int scanTS() {
+        BinaryClassDescrLoader tsLoader = new BinaryClassDescrLoader(classpath,
+                DefaultCacheSize);
+
+        tsLoader.setLog(log);
+        tsLoader.setIgnoreAnnotations(true);
+        ClassHierarchy tsHierarchy = new ClassHierarchyImpl(tsLoader,
+                ClassHierarchy.ALL_PUBLIC);
+        List<String> tsClasses = new ArrayList<>();
+        while (classpath.hasNext()) {
+            String name = classpath.nextClassName();
+            if (!isTSMember(name)) {
+                continue;
+            }
+
+            try {
+                ClassDescription tsClass = tsHierarchy.load(name);
+                refCounter.addTSClass(tsClass, false);
+                if (isShardMember(name)) {
+                    tsClasses.add(name);
+                }
+            } catch (ClassNotFoundException | ClassFormatError e) {
+                if (debug) {
+                    log.println(i18n.getString("Main.warning.class.invalid", name));
+                }
+                debug(e);
+            } catch (Throwable t) {
+                debug(t);
+                error(i18n.getString("Main.error.check", t.getMessage()));
+            }
+
+        }
+        //classpath.close();
+        // calls are resolved against the whole test suite hierarchy,
+        // so they are read and counted class by class after it is known
+        if (callCache != null) {
+            try {
+                callCache.load();
+            } catch (IOException e) {
+                debug(e);
+                log.println(i18n.getString("Main.warning.cache.read", ao.getValue(Option.CACHE)));
+            }
+        }
+        int size = countCalls(tsLoader, tsClasses);
+        if (callCache != null) {
+            try {
+                callCache.save();
+            } catch (IOException e) {
+                debug(e);
+                log.println(i18n.getString("Main.warning.cache.write", ao.getValue(Option.CACHE)));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Adds the reference counts of the TS shards, returns the number of
+     * count files read.
+     */
+    private int readCounts() {
+        int size = 0;
+        List<String> files = ao.getValues(Option.COUNTS);
+        if (files == null) {
+            return size;
+        }
+        for (String file : files) {
+            try {
+                if (!refCounter.readCounts(file)) {
+                    error(i18n.getString("Main.error.counts.mode", file));
+                }
+                size++;
+            } catch (IOException e) {
+                debug(e);
+                error(i18n.getString("Main.error.counts.read", file));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Counts the calls of the test classes, returns the number of calls.
+     * If the calls are filtered in the classpath order, worker threads only
+     * scan the classes ahead and the calls are counted as in the serial
+     * mode.
+     */
+    private int countCalls(BinaryClassDescrLoader tsLoader, List<String> tsClasses) {
+        if (threads > 1 && !callFilter.isOrdered()) {
+            return countCallsInShards(tsLoader, tsClasses);
+        }
+        int size = 0;
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            Deque<Future<List<MemberDescription>>> scanned = new ArrayDeque<>();
+            int submitted = 0;
+            for (String name : tsClasses) {
+                List<MemberDescription> calls;
+                try {
+                    if (executor == null) {
+                        calls = scanCalls(tsLoader, name);
+                    } else {
+                        while (submitted < tsClasses.size() && scanned.size() < 4 * threads) {
+                            scanned.add(executor.submit(scanTask(tsLoader, tsClasses.get(submitted++))));
+                        }
+                        calls = getCalls(scanned.remove());
+                    }
+                    if (callFilter.isOrdered()) {
+                        calls = callFilter.filterCalls(calls, name);
+                    }
+                } catch (Throwable t) {
+                    scanFailed(name, t);
+                    continue;
+                }
+                size += calls.size();
+                refCounter.addRefs(calls);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Counts the calls of the test classes in parallel, returns the number
+     * of calls. Each worker takes the next class, scans it and counts its
+     * calls in its own shard of the counters. The shards are merged when
+     * all classes are counted.
+     */
+    private int countCallsInShards(final BinaryClassDescrLoader tsLoader, final List<String> tsClasses) {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger size = new AtomicInteger();
+        // failures by the index of the class
+        final Map<Integer, Throwable> failures = new ConcurrentSkipListMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            List<RefCounter.Shard> shards = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final RefCounter.Shard shard = refCounter.newShard();
+                shards.add(shard);
+                workers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        int index;
+                        while ((index = next.getAndIncrement()) < tsClasses.size()) {
+                            try {
+                                List<MemberDescription> calls = scanCalls(tsLoader, tsClasses.get(index));
+                                size.addAndGet(calls.size());
+                                shard.addRefs(calls);
+                            } catch (Throwable t) {
+                                failures.put(index, t);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            for (RefCounter.Shard shard : shards) {
+                refCounter.merge(shard);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (Map.Entry<Integer, Throwable> e : failures.entrySet()) {
+            scanFailed(tsClasses.get(e.getKey()), e.getValue());
+        }
+        return size.get();
+    }
+
+    private void scanFailed(String name, Throwable t) {
+        if (t instanceof ClassNotFoundException || t instanceof ClassFormatError) {
+            if (debug) {
+                log.println(i18n.getString("Main.warning.class.invalid", name));
+            }
+            debug(t);
+        } else {
+            debug(t);
+            error(i18n.getString("Main.error.check", t.getMessage()));
+        }
+    }
+
+    private List<MemberDescription> scanCalls(BinaryClassDescrLoader tsLoader, String name) throws ClassNotFoundException {
+        if (callCache == null) {
+            return filterCalls(tsLoader.loadCalls(name), name);
+        }
+        // only changed classes are scanned, the rest comes from the cache
+        byte[] classFile = readClassFile(name);
+        byte[] digest = CallCache.digest(classFile);
+        List<MemberDescription> calls = callCache.getCalls(name, digest);
+        if (calls == null) {
+            calls = filterCalls(tsLoader.loadCalls(name, classFile), name);
+            callCache.putCalls(name, digest, calls);
+        }
+        return calls;
+    }
+
+    private List<MemberDescription> filterCalls(List<MemberDescription> calls, String name) {
+        return callFilter.isOrdered() ? calls : callFilter.filterCalls(calls, name);
+    }
+
+    private byte[] readClassFile(String name) throws ClassNotFoundException {
+        try (InputStream is = classpath.findClass(name)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private Callable<List<MemberDescription>> scanTask(final BinaryClassDescrLoader tsLoader, final String name) {
+        return new Callable<List<MemberDescription>>() {
+            @Override
+            public List<MemberDescription> call() throws ClassNotFoundException {
+                return scanCalls(tsLoader, name);
+            }
+        };
+    }
+
+    private static List<MemberDescription> getCalls(Future<List<MemberDescription>> f) throws Throwable {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
     private boolean searachOnly() {
         return ao.getValue(Option.API) == null;
     }
@@ -30,10 +30,16 @@ import com.sun.tdk.signaturetest.model.ClassDescription;
 import com.sun.tdk.signaturetest.model.MemberDescription;
 import com.sun.tdk.signaturetest.util.SwissKnife;
 
+import java.io.*;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class RefCounter {
 
+    private static final int COUNTS_MAGIC = 0x41434e31;
+    private static final int COUNTS_VERSION = 1;
+
     private final HashMap<String, ClassDescription> api = new HashMap<>();
 
     private enum MODE {
@@ -44,7 +50,171 @@ public class RefCounter {
     private MODE mode = MODE.WORST;
     private final Erasurator erasurator = new Erasurator();
     private final Map<String, ClassDescription> ts = new HashMap<>();
-    final Map<String, Integer> results = new HashMap<>();
+    // cover counts of the API members by their string form
+    private final Map<String, Counter> counters = new HashMap<>();
+    // erased members of the API classes mapped to the indexes of the
+    // counters of the original members, built before the calls are counted
+    private Map<String, Map<MemberDescription, int[]>> erasedMembers;
+    private Counter[] indexed;
+    // counts the calls passed to addRefs and addRef
+    private Shard direct;
+
+    private static class Counter {
+
+        int count;
+    }
+
+    private static class CallSite {
+
+        final MemberDescription call;
+        int count = 1;
+
+        CallSite(MemberDescription call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * Counts the calls of the test classes scanned by one worker. Shards
+     * share the API and the test suite classes but have their own counts
+     * and caches, so they can count in parallel. The counts are added by
+     * {@link #merge(Shard)}.
+     */
+    class Shard {
+
+        private final int[] counts;
+        // resolved declaring classes of the calls by the called test suite class
+        private final Map<String, Map<MemberDescription, Set<String>>> decls = new HashMap<>();
+        // members of the test suite classes mapped to their declaring classes
+        private final Map<String, Map<MemberDescription, String>> tsMembers = new HashMap<>();
+
+        private Shard(boolean direct) {
+            counts = direct ? null : new int[indexed.length];
+        }
+
+        /**
+         * Counts the calls of one test class. Identical call sites are
+         * looked up once and counted with their multiplicity.
+         */
+        void addRefs(List<MemberDescription> calls) {
+            Map<String, CallSite> sites = new LinkedHashMap<>();
+            for (MemberDescription call : calls) {
+                String key = call.toString();
+                CallSite site = sites.get(key);
+                if (site == null) {
+                    sites.put(key, new CallSite(call));
+                } else {
+                    site.count++;
+                }
+            }
+            for (CallSite site : sites.values()) {
+                addRef(site.call, site.count);
+            }
+        }
+
+        void addRef(MemberDescription call, int count) {
+            Set<String> calledClasses = Collections.emptySet();
+            if (ts.get(call.getDeclaringClassName()) == null) {
+                return;
+            }
+            try {
+                calledClasses = findDecl(ts.get(call.getDeclaringClassName()), call);
+            } catch (Exception e) {
+                SwissKnife.reportThrowable(e);
+            }
+
+            for (String calledCl : calledClasses) {
+                Map<MemberDescription, int[]> members = erasedMembers.get(calledCl);
+                if (members != null) {
+                    int[] found = members.get(call);
+                    if (found != null) {
+                        for (int i : found) {
+                            if (counts == null) {
+                                indexed[i].count += count;
+                            } else {
+                                counts[i] += count;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private Set<String> findDecl(ClassDescription tsClass, MemberDescription md) {
+            Map<MemberDescription, Set<String>> classDecls = decls.get(tsClass.getQualifiedName());
+            if (classDecls == null) {
+                classDecls = new HashMap<>();
+                decls.put(tsClass.getQualifiedName(), classDecls);
+            }
+            Set<String> result = classDecls.get(md);
+            if (result == null) {
+                result = resolveDecl(tsClass, md);
+                classDecls.put(md, result);
+            }
+            return result;
+        }
+
+        private Set<String> resolveDecl(ClassDescription tsClass, MemberDescription md) {
+            boolean foundSuper = true;
+            Set<String> result = new TreeSet<>();
+
+            if (mode == MODE.WORST) {
+                result.add(tsClass.getQualifiedName());
+            }
+
+            while (foundSuper) {
+                String theClass = getTSMembers(tsClass).get(md);
+                if (theClass != null) {
+                    result.add(theClass);
+                    return result;
+                }
+                // contain Collection or not
+                if (!tsClass.getMembersIterator().hasNext() && mode == MODE.WORST) {
+                    result.add(tsClass.getQualifiedName());
+                }
+
+                foundSuper = false;
+                if (tsClass.getSuperClass() != null
+                        && ts.get(tsClass.getSuperClass().getQualifiedName()) != null) {
+                    tsClass = ts.get(tsClass.getSuperClass().getQualifiedName());
+                    foundSuper = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the members of the test suite class mapped to their
+         * declaring classes. Classes without the member collection are
+         * represented by their declared constructors, fields and methods.
+         */
+        private Map<MemberDescription, String> getTSMembers(ClassDescription tsClass) {
+            Map<MemberDescription, String> members = tsMembers.get(tsClass.getQualifiedName());
+            if (members != null) {
+                return members;
+            }
+            members = new HashMap<>();
+            if (tsClass.getMembersIterator().hasNext()) {
+                for (Iterator<MemberDescription> i = tsClass.getMembersIterator(); i.hasNext(); ) {
+                    MemberDescription member = i.next();
+                    members.put(member, member.getDeclaringClassName());
+                }
+            } else {
+                String name = tsClass.getQualifiedName();
+                for (MemberDescription decl : tsClass.getDeclaredConstructors()) {
+                    members.put(decl, name);
+                }
+                for (MemberDescription decl : tsClass.getDeclaredFields()) {
+                    members.put(decl, name);
+                }
+                for (MemberDescription decl : tsClass.getDeclaredMethods()) {
+                    members.put(decl, name);
+                }
+            }
+            tsMembers.put(tsClass.getQualifiedName(), members);
+            return members;
+        }
+    }
 
     public RefCounter() {
         super();
@@ -77,10 +247,13 @@ public class RefCounter {
         }
         if (hasTracked || !hasMembers) {
             api.put(cd.getQualifiedName(), cd);
+            erasedMembers = null;
+            direct = null;
         }
     }
 
     public void addTSClass(ClassDescription cd, boolean fromAPI) {
+        direct = null;
         if (fromAPI) {
             ts.put(cd.getQualifiedName(), erasurator.erasure(cd));
             return;
@@ -95,99 +268,144 @@ public class RefCounter {
         ts.put(cd.getQualifiedName(), erasurator.erasure(cd));
     }
 
+    /**
+     * Counts the calls of one test class.
+     */
+    public void addRefs(List<MemberDescription> calls) {
+        getDirect().addRefs(calls);
+    }
+
     public void addRef(MemberDescription call) {
-        Set<String> calledClasses = Collections.emptySet();
-        if (ts.get(call.getDeclaringClassName()) == null) {
-            return;
-        }
-        try {
-            calledClasses = findDecl(ts.get(call.getDeclaringClassName()), call);
-            //calledClass = findDecl(ts.get(calledClass), call);
-        } catch (Exception e) {
-            SwissKnife.reportThrowable(e);
-        }
-
-        for (String calledCl : calledClasses) {
-            ClassDescription apiClass = api.get(calledCl);
-            if (apiClass != null) {
-                erasurator.parseTypeParameters(apiClass);
-                for (Iterator<MemberDescription> j = apiClass.getMembersIterator(); j.hasNext(); ) {
-                    MemberDescription orig = j.next();
-                    MemberDescription erased = erasurator.processMember(orig);
-                    if (erased.equals(call)) {
-                        Integer count = results.get(orig.toString());
-                        if (count == null) {
-                            count = 0;
-                        }
-                        count++;
-                        results.put(orig.toString(), count);
-                    }
-                }
-            }
+        getDirect().addRef(call, 1);
+    }
+
+    private Shard getDirect() {
+        if (direct == null) {
+            index();
+            direct = new Shard(true);
         }
+        return direct;
     }
 
-    private Set<String> findDecl(ClassDescription tsClass, MemberDescription md) {
-        boolean foundSuper = true;
-        Set<String> result = new TreeSet<>();
+    /**
+     * Creates a shard counting calls in parallel with the other ones. The
+     * API and the test suite classes must not change while the shards
+     * count.
+     */
+    Shard newShard() {
+        index();
+        return new Shard(false);
+    }
 
-        if (mode == MODE.WORST) {
-            result.add(tsClass.getQualifiedName());
+    /**
+     * Adds the counts of the shard
+     */
+    void merge(Shard shard) {
+        for (int i = 0; i < indexed.length; i++) {
+            indexed[i].count += shard.counts[i];
         }
+    }
 
-        while (foundSuper) {
-            // contain Collection or not
-            if (tsClass.getMembersIterator().hasNext()) {
-                if (tsClass.containsMember(md)) {
-                    String theClass = tsClass.findMember(md).getDeclaringClassName();
-                    result.add(theClass);
-                    return result;
-                }
-            } else {
-                for (MemberDescription decl : tsClass.getDeclaredConstructors()) {
-                    if (decl.equals(md)) {
-                        result.add(tsClass.getQualifiedName());
-                        return result;
-                    }
-                }
-                for (MemberDescription decl : tsClass.getDeclaredFields()) {
-                    if (decl.equals(md)) {
-                        result.add(tsClass.getQualifiedName());
-                        return result;
-                    }
-                }
-                for (MemberDescription decl : tsClass.getDeclaredMethods()) {
-                    if (decl.equals(md)) {
-                        result.add(tsClass.getQualifiedName());
-                        return result;
-                    }
+    /**
+     * Indexes the members of the API classes by their erasure. The classes
+     * are processed in the order of their names, so type parameters of
+     * outer classes are known when their nested classes are processed.
+     */
+    private void index() {
+        if (erasedMembers != null) {
+            return;
+        }
+        erasedMembers = new HashMap<>();
+        List<Counter> all = new ArrayList<>();
+        for (ClassDescription apiClass : new TreeMap<>(api).values()) {
+            Map<MemberDescription, int[]> members = new HashMap<>();
+            erasurator.parseTypeParameters(apiClass);
+            for (Iterator<MemberDescription> j = apiClass.getMembersIterator(); j.hasNext(); ) {
+                MemberDescription orig = j.next();
+                MemberDescription erased = erasurator.processMember(orig);
+                String key = orig.toString();
+                Counter c = counters.get(key);
+                if (c == null) {
+                    c = new Counter();
+                    counters.put(key, c);
                 }
-                if (mode == MODE.WORST) {
-                    result.add(tsClass.getQualifiedName());
+                all.add(c);
+                // different members may have the same erasure
+                int[] prev = members.get(erased);
+                if (prev == null) {
+                    members.put(erased, new int[]{all.size() - 1});
+                } else {
+                    int[] ids = Arrays.copyOf(prev, prev.length + 1);
+                    ids[prev.length] = all.size() - 1;
+                    members.put(erased, ids);
                 }
             }
-
-            foundSuper = false;
-            if (tsClass.getSuperClass() != null
-                    && ts.get(tsClass.getSuperClass().getQualifiedName()) != null) {
-                tsClass = ts.get(tsClass.getSuperClass().getQualifiedName());
-                foundSuper = true;
-            }
+            erasedMembers.put(apiClass.getQualifiedName(), members);
         }
-        return result;
+        indexed = all.toArray(new Counter[0]);
     }
 
     boolean isCovered(MemberDescription md) {
-        return results.get(md.toString()) != null;
+        return getCoverCount(md) > 0;
     }
 
     int getCoverCount(MemberDescription md) {
-        Integer res = results.get(md.toString());
-        if (res == null) {
-            return 0;
-        } else {
-            return res;
+        Counter c = counters.get(md.toString());
+        return c == null ? 0 : c.count;
+    }
+
+    /**
+     * Writes the nonzero cover counts of the API members. Count files of
+     * test suite shards are summed by {@link #readCounts(String)}.
+     * <p>
+     * The members are identified by their string form, so the shards must
+     * be counted against the same API in the same mode.
+     */
+    public void writeCounts(String fileName) throws IOException {
+        Map<String, Counter> counts = new TreeMap<>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            if (e.getValue().count > 0) {
+                counts.put(e.getKey(), e.getValue());
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(fileName))))) {
+            out.writeInt(COUNTS_MAGIC);
+            out.writeInt(COUNTS_VERSION);
+            out.writeBoolean(mode == MODE.WORST);
+            out.writeInt(counts.size());
+            for (Map.Entry<String, Counter> e : counts.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().count);
+            }
+        }
+    }
+
+    /**
+     * Adds the cover counts written by {@link #writeCounts(String)}.
+     * Returns false if the file was written in another mode.
+     */
+    public boolean readCounts(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(fileName))))) {
+            if (in.readInt() != COUNTS_MAGIC || in.readInt() != COUNTS_VERSION) {
+                throw new IOException(fileName);
+            }
+            if (in.readBoolean() != (mode == MODE.WORST)) {
+                return false;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String key = in.readUTF();
+                Counter c = counters.get(key);
+                if (c == null) {
+                    c = new Counter();
+                    counters.put(key, c);
+                }
+                c.count += in.readInt();
+            }
         }
+        return true;
     }
 
     private String findSuper(ClassDescription tsClass) {
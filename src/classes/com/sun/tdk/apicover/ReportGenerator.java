@@ -33,16 +33,10 @@ import com.sun.tdk.signaturetest.model.Modifier;
 import com.sun.tdk.signaturetest.model.PackageDescr;
 import com.sun.tdk.signaturetest.util.I18NResourceBundle;
 import com.sun.tdk.signaturetest.util.SwissKnife;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
-
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
 import java.util.*;
 
@@ -71,8 +65,11 @@ public abstract class ReportGenerator extends APIVisitor {
     FIELD_MODE fieldMode = FIELD_MODE.NOCONST;
     Set<EXLUDE_MODE> excludeMode = EnumSet.noneOf(EXLUDE_MODE.class);
     Map<String, String[]> config;
+    // counters of the classes by qualified name
     Map<String, Field> results = new HashMap<>();
-    Collection<String> xList = new ArrayList<>();
+    // counters of the packages of the reported classes by qualified name
+    Map<String, Field> packages = new HashMap<>();
+    Collection<String> xList = new HashSet<>();
     protected PrintWriter pw;
 
     public enum DETAIL_LEVEL {
@@ -107,8 +104,8 @@ public abstract class ReportGenerator extends APIVisitor {
     protected static class Field {
 
         int classes;
-        final int members;
-        final int tested;
+        int members;
+        int tested;
 
         Field(int members, int tested) {
             this.members = members;
@@ -121,6 +118,12 @@ public abstract class ReportGenerator extends APIVisitor {
             this.classes = classes;
         }
 
+        void add(Field f) {
+            classes++;
+            members += f.members;
+            tested += f.tested;
+        }
+
         String getPercent() {
             return (members == 0) ? "" : tested * 100 / members + "%";
         }
@@ -178,6 +181,7 @@ public abstract class ReportGenerator extends APIVisitor {
         newReportGenerator.fieldMode = this.fieldMode;
         newReportGenerator.pw = this.pw;
         newReportGenerator.results = this.results;
+        newReportGenerator.packages = this.packages;
         newReportGenerator.top = this.top;
         newReportGenerator.xList = this.xList;
         newReportGenerator.setLog(log);
@@ -268,80 +272,13 @@ public abstract class ReportGenerator extends APIVisitor {
         return false;
     }
 
-    private void filter() {
+    /**
+     * Removes excluded classes from the API and excluded members from the
+     * remaining classes, and counts the members of each class.
+     */
+    private void filter(List<ClassDescription> classes) {
         results.clear();
-        top = new PackageDescr("");
-        APIVisitor calc = new APIVisitor() {
-            protected void visit(ClassDescription cd) {
-                for (Iterator<MemberDescription> i = cd.getMembersIterator(); i.hasNext(); ) {
-                    MemberDescription md = i.next();
-                    if (!(md.isConstructor() || md.isField() || md.isMethod())) {
-                        i.remove();
-                        continue;
-                    }
-                    if (fieldMode == FIELD_MODE.NOCONST && md.isField() && md.hasModifier(Modifier.FINAL)
-                            && md.hasModifier(Modifier.STATIC) && isConstType(md.getType())) {
-                        i.remove();
-                        continue;
-                    }
-                    if (excludeMode.contains(EXLUDE_MODE.EXCLUDEFIELD) && md.isField()) {
-                        i.remove();
-                        continue;
-                    }
-                    if (excludeMode.contains(EXLUDE_MODE.EXCLUDEABSTRACTMETHODS) && md.isAbstract()) {
-                        i.remove();
-                        continue;
-                    }
-                    if (md.hasModifier(Modifier.FINAL)
-                            && !md.getDeclaringClassName().equals(
-                            cd.getQualifiedName())) {
-                        i.remove();
-                        continue;
-                    }
-                    if (isExcluded(cd.getQualifiedName() + "."
-                            + md.getName() + (md.isField() ? "" : "(" + md.getArgs() + ")"))) {
-                        i.remove();
-                        continue;
-                    }
-
-                }
-                int members = 0;
-                int tested = 0;
-                for (Iterator<MemberDescription> i = cd.getMembersIterator(); i.hasNext(); ) {
-                    MemberDescription md = i.next();
-                    members++;
-                    if (refCounter.isCovered(md)) {
-                        tested++;
-                    }
-                }
-                results.put(cd.toString(), new Field(members, tested));
-            }
-
-            protected void visit(PackageDescr pd) {
-                int members = 0;
-                int tested = 0;
-                int classes = 0;
-
-                for (Object o : pd.getDeclaredClasses()) {
-                    ClassDescription cd = (ClassDescription) o;
-                    visit(cd);
-                    members += results.get(cd.toString()).members;
-                    tested += results.get(cd.toString()).tested;
-                    classes++;
-                }
-
-                for (Object o : pd.getDeclaredPackages()) {
-                    PackageDescr sub = (PackageDescr) o;
-                    visit(sub);
-                    members += results.get(sub.toString()).members;
-                    tested += results.get(sub.toString()).tested;
-                    classes += results.get(sub.toString()).classes;
-                }
-                results.put(pd.toString(), new Field(classes, members, tested));
-            }
-        };
-
-        for (Iterator<ClassDescription> it = api.iterator(); it.hasNext(); ) {
+        for (Iterator<ClassDescription> it = classes.iterator(); it.hasNext(); ) {
             ClassDescription cd = it.next();
             if (excludeMode.contains(EXLUDE_MODE.EXCLUDEABSTRACTCLASSES)
                     && cd.isAbstract()) {
@@ -358,8 +295,73 @@ public abstract class ReportGenerator extends APIVisitor {
                 it.remove();
                 continue;
             }
+            results.put(cd.getQualifiedName(), filterMembers(cd));
+        }
+    }
+
+    private Field filterMembers(ClassDescription cd) {
+        int members = 0;
+        int tested = 0;
+        for (Iterator<MemberDescription> i = cd.getMembersIterator(); i.hasNext(); ) {
+            MemberDescription md = i.next();
+            if (!(md.isConstructor() || md.isField() || md.isMethod())) {
+                i.remove();
+                continue;
+            }
+            if (fieldMode == FIELD_MODE.NOCONST && md.isField() && md.hasModifier(Modifier.FINAL)
+                    && md.hasModifier(Modifier.STATIC) && isConstType(md.getType())) {
+                i.remove();
+                continue;
+            }
+            if (excludeMode.contains(EXLUDE_MODE.EXCLUDEFIELD) && md.isField()) {
+                i.remove();
+                continue;
+            }
+            if (excludeMode.contains(EXLUDE_MODE.EXCLUDEABSTRACTMETHODS) && md.isAbstract()) {
+                i.remove();
+                continue;
+            }
+            if (md.hasModifier(Modifier.FINAL)
+                    && !md.getDeclaringClassName().equals(
+                    cd.getQualifiedName())) {
+                i.remove();
+                continue;
+            }
+            if (!xList.isEmpty() && isExcluded(cd.getQualifiedName() + "."
+                    + md.getName() + (md.isField() ? "" : "(" + md.getArgs() + ")"))) {
+                i.remove();
+                continue;
+            }
+            members++;
+            if (refCounter.isCovered(md)) {
+                tested++;
+            }
+        }
+        return new Field(members, tested);
+    }
+
+    /**
+     * Adds the counters of the reported classes to all their enclosing
+     * packages, so the report is printed in a single pass over the API.
+     */
+    private void countPackages() {
+        packages.clear();
+        for (ClassDescription cd : api) {
+            Field f = results.get(cd.getQualifiedName());
+            String pname = cd.getPackageName();
+            while (true) {
+                Field pf = packages.get(pname);
+                if (pf == null) {
+                    pf = new Field(0, 0, 0);
+                    packages.put(pname, pf);
+                }
+                pf.add(f);
+                if (pname.isEmpty()) {
+                    break;
+                }
+                pname = ClassDescription.getPackageName(pname);
+            }
         }
-        calc.visit(api);
     }
 
     void out() {
@@ -371,19 +373,20 @@ public abstract class ReportGenerator extends APIVisitor {
             throw new IllegalStateException(e);
         }
 
+        List<ClassDescription> allApi = new ArrayList<>(refCounter.getClasses());
+        filter(allApi);
         if (!structure.isActive()) {
-            api = new ArrayList<>(refCounter.getClasses());
-            filter();
+            api = allApi;
+            countPackages();
             printHeader(null);
             print();
         } else {
-            List<ClassDescription> allApi = new ArrayList<>(refCounter.getClasses());
             printHeader(structure.getTitle());
             for (Structure.Section s : structure.getSections()) {
                 if (!s.isHidden()) {
                     api = filterRefs(s, allApi);
                     if (!api.isEmpty()) {
-                        filter();
+                        countPackages();
                         if (s.getTitle() != null) {
                             printHeader(s.getTitle());
                         }
@@ -464,8 +467,8 @@ class ReportPlain extends ReportGenerator {
         int tested = 0;
         int classes = 0;
         for (ClassDescription cd : api) {
-            members += results.get(cd.toString()).members;
-            tested += results.get(cd.toString()).tested;
+            members += results.get(cd.getQualifiedName()).members;
+            tested += results.get(cd.getQualifiedName()).tested;
             classes++;
         }
         Field all = new Field(classes, members, tested);
@@ -557,7 +560,8 @@ class ReportPlain extends ReportGenerator {
 
     @Override
     protected void visit(PackageDescr pd) {
-        if (!results.containsKey(pd.toString())) {
+        Field counters = packages.get(pd.getQualifiedName());
+        if (counters == null) {
             return;
         }
         if (pd.equals(top)) {
@@ -568,11 +572,11 @@ class ReportPlain extends ReportGenerator {
             tab(p7, '-');
             println();
         }
-        int members = results.get(pd.toString()).members;
-        int tested = results.get(pd.toString()).tested;
-        String percent = results.get(pd.toString()).getPercent();
+        int members = counters.members;
+        int tested = counters.tested;
+        String percent = counters.getPercent();
         tab(p0).append(pd.getQualifiedName());
-        tab(p3).append(results.get(pd.toString()).classes);
+        tab(p3).append(counters.classes);
         tab(p4).append(members);
         tab(p5).append(tested);
 
@@ -596,9 +600,10 @@ class ReportPlain extends ReportGenerator {
         }
 
         tab(p1).append(classRepr(cd));
-        int members = results.get(cd.toString()).members;
-        int tested = results.get(cd.toString()).tested;
-        String percent = results.get(cd.toString()).getPercent();
+        Field counters = results.get(cd.getQualifiedName());
+        int members = counters.members;
+        int tested = counters.tested;
+        String percent = counters.getPercent();
         tab(p4).append(members);
         tab(p5).append(tested);
         if (members != 0) {
@@ -684,7 +689,8 @@ interface XC {
 
 class ReportXML extends ReportGenerator {
 
-    TransformerHandler ser;
+    XMLStreamWriter ser;
+    private int depth;
     final Erasurator erasurator = new Erasurator();
 
     public ReportXML(RefCounter reporter) {
@@ -692,18 +698,20 @@ class ReportXML extends ReportGenerator {
     }
 
     public void printHead() {
+        if (config.isEmpty()) {
+            emptyElement(XC.HEAD);
+            return;
+        }
         startElement(XC.HEAD);
         for (Map.Entry<String, String[]> stringEntry : config.entrySet()) {
             for (String value : stringEntry.getValue()) {
                 // XXX to think about this repr
-                AttributesImpl atts = new AttributesImpl();
-                atts.addAttribute("", "", XC.HEAD_PROPERTY_NAME, "", stringEntry.getKey());
-                atts.addAttribute("", "", XC.HEAD_PROPERTY_VALUE, "", value);
-                startElement(XC.HEAD_PROPERTY, atts);
-                endElement(XC.HEAD_PROPERTY);
+                emptyElement(XC.HEAD_PROPERTY,
+                        XC.HEAD_PROPERTY_NAME, stringEntry.getKey(),
+                        XC.HEAD_PROPERTY_VALUE, value);
             }
         }
-        endElement(XC.HEAD);
+        endElement();
     }
 
     @Override
@@ -718,29 +726,20 @@ class ReportXML extends ReportGenerator {
 
     @Override
     public void print() {
-        SAXTransformerFactory stf = (SAXTransformerFactory) TransformerFactory.newInstance();
-        stf.setAttribute("indent-number", 4);
-        Properties outputProps = new Properties();
-        Result result;
-        outputProps.put(OutputKeys.INDENT, "yes");
-        outputProps.put(OutputKeys.ENCODING, "UTF-8");
         try {
-            ser = stf.newTransformerHandler();
-            ser.getTransformer().setOutputProperties(outputProps);
-            result = new StreamResult(pw);
-            ser.setResult(result);
-            ser.startDocument();
+            // elements are written as the API is visited,
+            // the document is never kept in memory
+            ser = XMLOutputFactory.newInstance().createXMLStreamWriter(pw);
+            depth = 0;
+            ser.writeStartDocument("UTF-8", "1.0");
             startElement(XC.REPORT);
             printHead();
             visit(api);
-            endElement(XC.REPORT);
-            ser.endDocument();
-
-
-            /////////////////////
-            //ser = stf.newTransformerHandler(new StreamSource(new File("pp.xsl")));
-            //ser.getTransformer().transform(new StreamSource("out.xml"), new StreamResult(System.out));
-        } catch (TransformerException | SAXException ex) {
+            endElement();
+            ser.writeCharacters("\n");
+            ser.writeEndDocument();
+            ser.flush();
+        } catch (XMLStreamException ex) {
             SwissKnife.reportThrowable(ex);
         }
     }
@@ -754,36 +753,49 @@ class ReportXML extends ReportGenerator {
 
     @Override
     protected void visit(PackageDescr pd) {
-        AttributesImpl atts = new AttributesImpl();
-        atts.addAttribute("", "", XC.PACKAGE_NAME, "", pd.getName());
-        atts.addAttribute("", "", XC.PACKAGE_QNAME, "", pd.getQualifiedName());
-        atts.addAttribute("", "", XC.PACKAGE_MEMBERS, "", String.valueOf(results.get(pd.toString()).members));
-        atts.addAttribute("", "", XC.PACKAGE_TESTED, "", String.valueOf(results.get(pd.toString()).tested));
-        startElement(XC.PACKAGE, atts);
+        Field counters = packages.get(pd.getQualifiedName());
+        startElement(XC.PACKAGE,
+                XC.PACKAGE_NAME, pd.getName(),
+                XC.PACKAGE_QNAME, pd.getQualifiedName(),
+                XC.PACKAGE_MEMBERS, String.valueOf(counters.members),
+                XC.PACKAGE_TESTED, String.valueOf(counters.tested));
         super.visit(pd);
-        endElement(XC.PACKAGE);
+        endElement();
     }
 
     @Override
     protected void visit(ClassDescription cd) {
-        AttributesImpl atts = new AttributesImpl();
-        atts.addAttribute("", "", XC.CLASS_NAME, "", constructClassName(cd));
+        List<String> atts = new ArrayList<>();
+        atts.add(XC.CLASS_NAME);
+        atts.add(constructClassName(cd));
         if (cd.getTypeParameters() != null) {
-            atts.addAttribute("", "", XC.CLASS_TYPEARGS, "", cd.getTypeParameters());
+            atts.add(XC.CLASS_TYPEARGS);
+            atts.add(cd.getTypeParameters());
+        }
+        addModifiers(atts, Modifier.toString(cd.getMemberType(), cd.getModifiers(), false));
+        Field counters = results.get(cd.getQualifiedName());
+        atts.add(XC.CLASS_MEMBERS);
+        atts.add(String.valueOf(counters.members));
+        atts.add(XC.CLASS_TESTED);
+        atts.add(String.valueOf(counters.tested));
+        if (counters.members == 0) {
+            emptyElement(XC.CLASS, atts.toArray(new String[0]));
+            return;
         }
-        String[] modifiers = Modifier.toString(cd.getMemberType(), cd.getModifiers(), false).split(" ");
-        for (String modifier : modifiers) {
+        startElement(XC.CLASS, atts.toArray(new String[0]));
+        erasurator.parseTypeParameters(cd);
+        super.visit(cd);
+        endElement();
+    }
+
+    private static void addModifiers(List<String> atts, String modifiers) {
+        for (String modifier : modifiers.split(" ")) {
             // XXX should be rewitten
             if (!modifier.startsWith("!") && !modifier.startsWith("acc_")) {
-                atts.addAttribute("", "", modifier, "", "true");
+                atts.add(modifier);
+                atts.add("true");
             }
         }
-        atts.addAttribute("", "", XC.CLASS_MEMBERS, "", String.valueOf(results.get(cd.toString()).members));
-        atts.addAttribute("", "", XC.CLASS_TESTED, "", String.valueOf(results.get(cd.toString()).tested));
-        startElement(XC.CLASS, atts);
-        erasurator.parseTypeParameters(cd);
-        super.visit(cd);
-        endElement(XC.CLASS);
     }
 
     private static String constructClassName(ClassDescription cd) {
@@ -828,54 +840,74 @@ class ReportXML extends ReportGenerator {
         String vmsig = md.isField() ? convertTypeToVM(md.getType())
                 : md.isConstructor() ? convertArgsToVM(md.getArgs())
                 : /* meth */ convertArgsToVM(md.getArgs()) + convertTypeToVM(md.getType());
-        AttributesImpl atts = new AttributesImpl();
-        atts.addAttribute("", "", XC.MEMBER_NAME, "", md.getName());
-        atts.addAttribute("", "", XC.MEMBER_VMSIG, "", vmsig);
-        atts.addAttribute("", "", XC.MEMBER_SIG, "", sig);
+        List<String> atts = new ArrayList<>();
+        atts.add(XC.MEMBER_NAME);
+        atts.add(md.getName());
+        atts.add(XC.MEMBER_VMSIG);
+        atts.add(vmsig);
+        atts.add(XC.MEMBER_SIG);
+        atts.add(sig);
 
         if (md.isMethod()) {
-            atts.addAttribute("", "", XC.MEMBER_TYPE, "", md.getType());
+            atts.add(XC.MEMBER_TYPE);
+            atts.add(md.getType());
         }
 
-        String[] modifiers = Modifier.toString(md.getMemberType(), md.getModifiers(), false).split(" ");
-        for (String modifier : modifiers) {
-            // XXX should be rewitten
-            if (!modifier.startsWith("!") && !modifier.startsWith("acc_")) {
-                atts.addAttribute("", "", modifier, "", "true");
-            }
-        }
-        atts.addAttribute("", "", XC.MEMBER_TESTED, "", coverCount > 0 ? "1" : "0");
-        atts.addAttribute("", "", XC.MEMBER_REFCOUNT, "", String.valueOf(coverCount));
-        startElement(type, atts);
-        endElement(type);
+        addModifiers(atts, Modifier.toString(md.getMemberType(), md.getModifiers(), false));
+        atts.add(XC.MEMBER_TESTED);
+        atts.add(coverCount > 0 ? "1" : "0");
+        atts.add(XC.MEMBER_REFCOUNT);
+        atts.add(String.valueOf(coverCount));
+        emptyElement(type, atts.toArray(new String[0]));
     }
 
-    private void startElement(String name, AttributesImpl attrs) {
+    private void startElement(String name, String... attrs) {
         try {
-            ser.startElement("", "", name, attrs);
-        } catch (SAXException e) {
+            if (depth > 0) {
+                indent();
+            }
+            ser.writeStartElement(name);
+            writeAttributes(attrs);
+            depth++;
+        } catch (XMLStreamException e) {
             SwissKnife.reportThrowable(e);
         }
     }
 
-    private void startElement(String name, String... attrs) {
-        AttributesImpl attrImpl = new AttributesImpl();
-        assert attrs.length % 2 == 0;
-        for (int i = 0; i < attrs.length; i += 2) {
-            attrImpl.addAttribute("", "'", attrs[i], "", attrs[i + 1]);
-        }
+    private void emptyElement(String name, String... attrs) {
         try {
-            ser.startElement("", "", name, attrImpl);
-        } catch (SAXException e) {
+            if (depth > 0) {
+                indent();
+            }
+            ser.writeEmptyElement(name);
+            writeAttributes(attrs);
+        } catch (XMLStreamException e) {
             SwissKnife.reportThrowable(e);
         }
     }
 
-    private void endElement(String name) {
+    private void endElement() {
         try {
-            ser.endElement("", "", name);
-        } catch (SAXException e) {
+            depth--;
+            indent();
+            ser.writeEndElement();
+        } catch (XMLStreamException e) {
             SwissKnife.reportThrowable(e);
         }
     }
+
+    private void writeAttributes(String... attrs) throws XMLStreamException {
+        assert attrs.length % 2 == 0;
+        for (int i = 0; i < attrs.length; i += 2) {
+            ser.writeAttribute(attrs[i], attrs[i + 1]);
+        }
+    }
+
+    private void indent() throws XMLStreamException {
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("    ");
+        }
+        ser.writeCharacters(sb.toString());
+    }
 }
@@ -79,7 +79,7 @@ public class Converter extends Result {
         //write header to the signature file
 
         try (Writer writer = newFormat.getWriter();
-             OutputStream os = new FileOutputStream(newFileName);
+             OutputStream os = FileManager.createSignatureFile(newFileName);
              OutputStreamWriter w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
              PrintWriter pw = new PrintWriter(w)) {
             writer.init(pw);
@@ -40,6 +40,7 @@ public class Main {
     private static final String COMMAND_TEST_ALT = "SignatureTest";
     private static final String COMMAND_SETUP_AND_TEST = "SetupAndTest";
     private static final String COMMAND_MERGE = "Merge";
+    private static final String COMMAND_DIFF = "Diff";
     private static final String COMMAND_HELP = "-help";
 
     private static final I18NResourceBundle i18n
@@ -63,10 +64,10 @@ public class Main {
         if (isSigtestdevJar) {
             System.out.println(i18n.getString("Main.usage.variant.canbedev",
                     new Object[]{COMMAND_MOD_SETUP, COMMAND_SETUP, COMMAND_MOD_TEST, COMMAND_TEST,
-                            COMMAND_SETUP_AND_TEST, COMMAND_MERGE}));
+                            COMMAND_SETUP_AND_TEST, COMMAND_MERGE, COMMAND_DIFF}));
         } else {
             System.out.println(i18n.getString("Main.usage.variant.canbe",
-                    new Object[]{COMMAND_TEST, COMMAND_MERGE}));
+                    new Object[]{COMMAND_TEST, COMMAND_MERGE, COMMAND_DIFF}));
         }
     }
 
@@ -129,6 +130,8 @@ public class Main {
                 }
             } else if (args[0].equalsIgnoreCase(COMMAND_MERGE)) {
                 Merge.main(otherArgs);
+            } else if (args[0].equalsIgnoreCase(COMMAND_DIFF)) {
+                SigFileDiff.main(otherArgs);
             } else if (Option.VERSION.accept(args[0])) {
                 printVersionInfo();
                 System.exit(1);
@@ -31,6 +31,7 @@ import com.sun.tdk.signaturetest.core.context.Option;
 import com.sun.tdk.signaturetest.loaders.VirtualClassDescriptionLoader;
 import com.sun.tdk.signaturetest.merge.JSR68Merger;
 import com.sun.tdk.signaturetest.merge.MergedSigFile;
+import com.sun.tdk.signaturetest.merge.SortedSigFile;
 import com.sun.tdk.signaturetest.model.ClassDescription;
 import com.sun.tdk.signaturetest.sigfile.*;
 import com.sun.tdk.signaturetest.sigfile.Writer;
@@ -38,7 +39,10 @@ import com.sun.tdk.signaturetest.util.*;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.List;
 
 public class Merge extends SigTest {
 
@@ -92,11 +96,14 @@ public class Merge extends SigTest {
         }
 
         final String optionsDecoder = "decodeOptions";
-        MergeOptions mo = AppContext.getContext().getBean(MergeOptions.class);
+        MergeOptions mo = context.getBean(MergeOptions.class);
         parser.addOptions(mo.getOptions(), optionsDecoder);
 
         try {
             parser.processArgs(args);
+            if (mo.getValue(Option.THREADS) != null) {
+                checkThreads(mo.getValue(Option.THREADS));
+            }
             if (mo.getValue(Option.WRITE) != null) {
                 checkValidWriteFile();
             }
@@ -108,9 +115,21 @@ public class Merge extends SigTest {
         return passed();
     }
 
-    private static void checkValidWriteFile() throws CommandLineParserException {
+    private static void checkThreads(String value) throws CommandLineParserException {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            n = 0;
+        }
+        if (n < 1) {
+            throw new CommandLineParserException(i18n.getString("Merge.error.threads", new Object[]{Option.THREADS.getKey(), value}));
+        }
+    }
+
+    private void checkValidWriteFile() throws CommandLineParserException {
         File canonicalFile = null;
-        MergeOptions mo = AppContext.getContext().getBean(MergeOptions.class);
+        MergeOptions mo = context.getBean(MergeOptions.class);
         try {
             canonicalFile = (new File(mo.getValue(Option.WRITE))).getCanonicalFile();
         } catch (IOException e) {
@@ -128,24 +147,34 @@ public class Merge extends SigTest {
             }
         }
 
+        // the file is replaced only if the merge succeeds, don't truncate it here
+        File writeFile = new File(mo.getValue(Option.WRITE));
         try {
-            FileOutputStream f = new FileOutputStream(mo.getValue(Option.WRITE));
+            boolean created = !writeFile.exists();
+            FileOutputStream f = new FileOutputStream(writeFile, true);
             f.close();
+            if (created) {
+                writeFile.delete();
+            }
         } catch (IOException e) {
             throw new CommandLineParserException(i18n.getString("Merge.could.not.create.write.file"));
         }
     }
 
     public void decodeOptions(String optionName, String[] args) throws CommandLineParserException {
-        MergeOptions mo = AppContext.getContext().getBean(MergeOptions.class);
+        MergeOptions mo = context.getBean(MergeOptions.class);
         mo.readOptions(optionName, args);
     }
 
     void perform() {
 
         String msg;
-        MergeOptions mo = AppContext.getContext().getBean(MergeOptions.class);
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        MergeOptions mo = context.getBean(MergeOptions.class);
+        if (mo.isSet(Option.STREAM)) {
+            performStreaming();
+            return;
+        }
+        BaseOptions bo = context.getBean(BaseOptions.class);
         String testURL = bo.getValue(Option.TEST_URL);
         if (testURL == null) {
             testURL = "";
@@ -209,10 +238,66 @@ public class Merge extends SigTest {
             }
         }
 
+        writeSigFile(merger, result, null);
+    }
+
+    /**
+     * Merges sorted signature files class by class
+     */
+    private void performStreaming() {
+        MergeOptions mo = context.getBean(MergeOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
+        String testURL = bo.getValue(Option.TEST_URL);
+        if (testURL == null) {
+            testURL = "";
+        }
+
+        List<String> fileNames = mo.getValues(Option.FILES);
+        SortedSigFile[] files = new SortedSigFile[fileNames.size()];
+        FeaturesHolder fh = new FeaturesHolder();
+        try {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new SortedSigFile(getFileManager(), FileManager.getURL(testURL, fileNames.get(i)));
+                if (i == 0) {
+                    fh.setFeatures(files[i].getSupportedFeatures());
+                } else {
+                    fh.retainFeatures(files[i].getSupportedFeatures());
+                }
+            }
+
+            JSR68Merger merger = new JSR68Merger(this, this, fh);
+            writeSigFile(merger, null, files);
+        } catch (IOException e) {
+            if (bo.isSet(Option.DEBUG)) {
+                SwissKnife.reportThrowable(e);
+            }
+            error(e.getMessage());
+            printErrors();
+        } finally {
+            for (SortedSigFile f : files) {
+                if (f != null) {
+                    try {
+                        f.close();
+                    } catch (IOException ex) {
+                        SwissKnife.reportThrowable(ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes either already merged classes or the result of merging of the
+     * sorted files
+     */
+    private void writeSigFile(JSR68Merger merger, VirtualClassDescriptionLoader result, SortedSigFile[] sortedFiles) {
+        MergeOptions mo = context.getBean(MergeOptions.class);
         Writer writer = null;
-        FileOutputStream fos = null;
+        OutputStream fos = null;
         OutputStreamWriter osw = null;
         PrintWriter pw = null;
+        File out = null;
+        File tmp = null;
 
         try {
             //write header to the signature file
@@ -224,7 +309,11 @@ public class Merge extends SigTest {
 
             writer.setApiVersion("");
             if (mo.getValue(Option.WRITE) != null) {
-                fos = new FileOutputStream(mo.getValue(Option.WRITE));
+                // the result replaces the file only if it's complete, the name
+                // of the temporary file keeps the extension choosing compression
+                out = new File(mo.getValue(Option.WRITE)).getAbsoluteFile();
+                tmp = File.createTempFile("merge", "-" + out.getName(), out.getParentFile());
+                fos = FileManager.createSignatureFile(tmp.getPath());
                 osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
                 pw = new PrintWriter(osw);
             } else {
@@ -239,11 +328,15 @@ public class Merge extends SigTest {
             }
             writer.writeHeader();
 
-            // scan class and writes definition to the signature file
-            // 1st analyze all the classes
-            for (Iterator<ClassDescription> i = result.getClassIterator(); i.hasNext(); ) {
-                ClassDescription c = i.next();
-                writer.write(c);
+            if (sortedFiles != null) {
+                merger.merge(sortedFiles, writer);
+            } else {
+                // scan class and writes definition to the signature file
+                // 1st analyze all the classes
+                for (Iterator<ClassDescription> i = result.getClassIterator(); i.hasNext(); ) {
+                    ClassDescription c = i.next();
+                    writer.write(c);
+                }
             }
 
         } catch (IOException e) {
@@ -266,6 +359,19 @@ public class Merge extends SigTest {
             if (pw != null) {
                 pw.close();
             }
+            if (tmp != null) {
+                try {
+                    if (isPassed()) {
+                        Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (IOException ex) {
+                    error(ex.getMessage());
+                } finally {
+                    if (tmp.exists() && !tmp.delete()) {
+                        tmp.deleteOnExit();
+                    }
+                }
+            }
         }
         printErrors();
     }
@@ -281,6 +387,8 @@ public class Merge extends SigTest {
                 nl + i18n.getString("Merge.usage.files", Option.FILES.getKey()) +
                 nl + i18n.getString("Merge.usage.write", Option.WRITE.getKey()) +
                 nl + i18n.getString("Merge.usage.binary", Option.BINARY.getKey()) +
+                nl + i18n.getString("Merge.usage.stream", Option.STREAM.getKey()) +
+                nl + i18n.getString("Merge.usage.threads", Option.THREADS.getKey()) +
                 nl + i18n.getString("Sigtest.usage.delimiter") +
                 nl + i18n.getString("SetupAndTest.helpusage.version", Option.VERSION.getKey()) +
                 nl + i18n.getString("Setup.usage.help", Option.HELP.getKey()) +
@@ -25,7 +25,6 @@
 
 package com.sun.tdk.signaturetest;
 
-import com.sun.tdk.signaturetest.core.AppContext;
 import com.sun.tdk.signaturetest.core.ModuleDescriptionLoader;
 import com.sun.tdk.signaturetest.core.context.ModFeatures;
 import com.sun.tdk.signaturetest.core.context.ModSetupOptions;
@@ -48,7 +47,7 @@ import java.util.Set;
 
 public class ModSetup extends ModBase {
 
-    private final ModSetupOptions mo = AppContext.getContext().getBean(ModSetupOptions.class);
+    private final ModSetupOptions mo = context.getBean(ModSetupOptions.class);
     private String copyrightStr = null;
     private EnumSet<ModFeatures> features = EnumSet.of(ModFeatures.ALL);
     private WriteMode wm = WriteMode.SIGFILE;
@@ -209,7 +208,7 @@ public class ModSetup extends ModBase {
         }
 
         try (Writer w = getFileManager().getDefaultFormat().getWriter();
-             FileOutputStream fos = new FileOutputStream(FileManager.getURL(mo.getValue(Option.TEST_URL), mo.getValue(Option.FILE_NAME)).getFile());
+             OutputStream fos = FileManager.createSignatureFile(FileManager.getURL(mo.getValue(Option.TEST_URL), mo.getValue(Option.FILE_NAME)).getFile());
              OutputStreamWriter osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
 
             if (w instanceof ModWriter) {
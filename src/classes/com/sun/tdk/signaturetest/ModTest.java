@@ -25,15 +25,12 @@
 
 package com.sun.tdk.signaturetest;
 
-import com.sun.tdk.signaturetest.core.AppContext;
 import com.sun.tdk.signaturetest.core.ModuleDescriptionLoader;
 import com.sun.tdk.signaturetest.core.context.ModFeatures;
 import com.sun.tdk.signaturetest.core.context.ModTestOptions;
 import com.sun.tdk.signaturetest.core.context.Option;
 import com.sun.tdk.signaturetest.model.ModuleDescription;
 import com.sun.tdk.signaturetest.sigfile.MultipleFileReader;
-import com.sun.tdk.signaturetest.sigfile.f43.F43Reader;
-import com.sun.tdk.signaturetest.toyxml.Elem;
 import com.sun.tdk.signaturetest.util.CommandLineParser;
 import com.sun.tdk.signaturetest.util.CommandLineParserException;
 import com.sun.tdk.signaturetest.util.OptionInfo;
@@ -44,7 +41,7 @@ import java.util.*;
 
 public class ModTest extends ModBase {
 
-    private final ModTestOptions mo = AppContext.getContext().getBean(ModTestOptions.class);
+    private final ModTestOptions mo = context.getBean(ModTestOptions.class);
     private EnumSet<ModFeatures> checkers = EnumSet.of(ModFeatures.REQUIRES_TRANSITIVE, ModFeatures.EXPORTS_PUBLIC);
 
     public ModTest() {
@@ -351,10 +348,9 @@ public class ModTest extends ModBase {
         in.readSignatureFile(testUrl, mo.getValue(Option.FILE_NAME));
 
         Map<String, ModuleDescription> modules = new HashMap<>();
-        List<Elem> docs = in.getElements();
-        if (docs != null) {
-            for (Elem m : docs) {
-                ModuleDescription md = F43Reader.fromTDom(m);
+        List<ModuleDescription> mds = in.getModules();
+        if (mds != null) {
+            for (ModuleDescription md : mds) {
                 modules.put(md.getName(), md);
             }
         }
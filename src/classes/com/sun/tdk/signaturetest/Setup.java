@@ -152,7 +152,7 @@ public class Setup extends SigTest {
     protected boolean parseParameters(String[] args) {
 
         CommandLineParser parser = new CommandLineParser(this, "-");
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
 
 
         // Print help text only and exit.
@@ -267,7 +267,7 @@ public class Setup extends SigTest {
         if (explicitlyGenConsts != null) {
             setConstantValuesTracked(explicitlyGenConsts);
         } else {
-            BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+            BaseOptions bo = context.getBean(BaseOptions.class);
             setConstantValuesTracked(bo.isSet(Option.STATIC));
         }
     }
@@ -322,7 +322,7 @@ public class Setup extends SigTest {
 
         // create list of all classes available
         Set<String> allClasses = new HashSet<>();
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         getLog().println(i18n.getString("Setup.log.classpath", bo.getValue(Option.CLASSPATH)));
 
         try {
@@ -393,7 +393,7 @@ public class Setup extends SigTest {
             }
 
             try (Writer writer = getFileManager().getDefaultFormat().getWriter();
-                 FileOutputStream fos = new FileOutputStream(sigFile.getFile());
+                 OutputStream fos = FileManager.createSignatureFile(sigFile.getFile());
                  OutputStreamWriter osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
                 //write header to the signature file
 
@@ -404,7 +404,7 @@ public class Setup extends SigTest {
                     writer.addFeature(FeaturesHolder.ConstInfo);
                 }
 
-                if (isTigerFeaturesTracked) {
+                if (isTigerFeaturesTracked()) {
                     writer.addFeature(FeaturesHolder.TigerInfo);
                 }
 
@@ -554,7 +554,7 @@ public class Setup extends SigTest {
      */
     private Collection<String> getPackageClasses(Collection<String> classes) {
         Set<String> packageClasses = new HashSet<>();
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         int nonTigerCount = 0;
 
         // create table of the nested packageClasses.
@@ -568,7 +568,7 @@ public class Setup extends SigTest {
                         packageClasses.add(name);
                         if (!c.isTiger()) {
                             nonTigerCount++;
-                            if (Xverbose && isTigerFeaturesTracked) {
+                            if (Xverbose && isTigerFeaturesTracked()) {
                                 getLog().println(i18n.getString("Setup.report.message.nontigerclass", name));
                             }
                         }
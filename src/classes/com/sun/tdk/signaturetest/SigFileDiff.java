@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.signaturetest;
+
+import com.sun.tdk.signaturetest.core.AppContext;
+import com.sun.tdk.signaturetest.core.context.Option;
+import com.sun.tdk.signaturetest.errors.ErrorFormatter;
+import com.sun.tdk.signaturetest.errors.MessageType;
+import com.sun.tdk.signaturetest.errors.SortedErrorFormatter;
+import com.sun.tdk.signaturetest.model.ClassDescription;
+import com.sun.tdk.signaturetest.model.MemberDescription;
+import com.sun.tdk.signaturetest.model.MemberType;
+import com.sun.tdk.signaturetest.sigfile.ClassHashes;
+import com.sun.tdk.signaturetest.util.I18NResourceBundle;
+import com.sun.tdk.signaturetest.util.Logger;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Compares two signature files directly. This is a SignatureTest in the static
+ * mode which reads the base signature file as usual and uses the target one as
+ * the classpath. Before the check both files are hashed class by class, the
+ * classes whose descriptions and hierarchies are the same in both files are
+ * not compared.
+ * <p>
+ * With {@code -threads n} the changed classes are split between n workers.
+ * Each worker is a separate test with its own context and its own copy of
+ * both signature files. The workers record the results of each class, then
+ * the main test replays them in the signature file order instead of
+ * comparing the classes itself, so the report is the same as for the serial
+ * run. The human readable and backward compatibility formats and the
+ * verbose output depend on the order of all the checks, so they are not
+ * supported with more than one thread.
+ *
+ * @see ClassHashes
+ */
+public class SigFileDiff extends SignatureTest {
+
+    // specific SigFileDiff options
+    public static final String BASE_OPTION = "-Base";
+    public static final String TARGET_OPTION = "-Target";
+
+    private static final I18NResourceBundle i18n = I18NResourceBundle.getBundleForClass(SigFileDiff.class);
+
+    private ClassHashes baseHashes;
+    private ClassHashes targetHashes;
+    private int threads = 1;
+    private Worker[] workers;
+
+    public static void main(String[] args) {
+        SigFileDiff t = new SigFileDiff();
+        t.run(args, new PrintWriter(System.err, true), null);
+        t.exit();
+    }
+
+    @Override
+    public void run(String[] args, PrintWriter log, PrintWriter ref) {
+        String base = null;
+        String target = null;
+        List<String> other = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 < args.length && BASE_OPTION.equalsIgnoreCase(args[i])) {
+                base = args[++i];
+            } else if (i + 1 < args.length && TARGET_OPTION.equalsIgnoreCase(args[i])) {
+                target = args[++i];
+            } else if (i + 1 < args.length && Option.THREADS.accept(args[i])) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    String msg = i18n.getString("SigFileDiff.error.threads", new Object[]{Option.THREADS.getKey(), args[i]});
+                    log.println(msg);
+                    error(msg);
+                    return;
+                }
+            } else {
+                other.add(args[i]);
+            }
+        }
+
+        if (threads > 1) {
+            for (String arg : other) {
+                if (Option.FORMATHUMAN.accept(arg) || Option.BACKWARD.accept(arg) || VERBOSE_OPTION.equalsIgnoreCase(arg)) {
+                    String msg = i18n.getString("SigFileDiff.error.threads.option", new Object[]{Option.THREADS.getKey(), arg});
+                    log.println(msg);
+                    error(msg);
+                    return;
+                }
+            }
+        }
+
+        if (base != null && target != null) {
+            // the update changes the base classes, their hashes are unknown
+            boolean update = false;
+            for (String arg : other) {
+                update |= UPDATE_FILE_OPTION.equalsIgnoreCase(arg);
+            }
+            other.add(Option.STATIC.getKey());
+            other.add(Option.FILE_NAME.getKey());
+            other.add(base);
+            other.add(Option.CLASSPATH.getKey());
+            other.add(target);
+            if (!update) {
+                readHashes(base, target, log);
+            }
+        } else if (other.isEmpty() || !Option.HELP.accept(other.get(0))) {
+            usage();
+            String msg = i18n.getString("SigFileDiff.error.options", new Object[]{BASE_OPTION, TARGET_OPTION});
+            log.println(msg);
+            error(msg);
+            return;
+        }
+
+        try {
+            if (threads > 1 && base != null && !runWorkers(other, log)) {
+                return;
+            }
+            runTest(other.toArray(new String[0]), log, ref);
+        } finally {
+            baseHashes = null;
+            targetHashes = null;
+            workers = null;
+        }
+    }
+
+    private void runTest(String[] args, PrintWriter log, PrintWriter ref) {
+        super.run(args, log, ref);
+    }
+
+    /**
+     * Hashes both signature files in parallel. If any of them can't be read
+     * all the classes will be compared, the error will be reported by the
+     * test itself.
+     */
+    private void readHashes(String base, String target, PrintWriter log) {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ClassHashes> b = executor.submit(hashTask(base));
+            Future<ClassHashes> t = executor.submit(hashTask(target));
+            ClassHashes bh = b.get();
+            ClassHashes th = t.get();
+            // hashes of the same text are meaningful only for the same format and features
+            if (bh.getHeader().equals(th.getHeader())) {
+                baseHashes = bh;
+                targetHashes = th;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.println(i18n.getString("SigFileDiff.mesg.nohashes", e.getCause()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Callable<ClassHashes> hashTask(final String fileName) {
+        return new Callable<ClassHashes>() {
+            public ClassHashes call() throws Exception {
+                return new ClassHashes(new File(fileName).toURI().toURL());
+            }
+        };
+    }
+
+    /**
+     * Runs the workers and waits for them. Returns false if any of them
+     * failed, the error is already reported.
+     */
+    private boolean runWorkers(List<String> args, PrintWriter log) {
+        // the report goes to the main log only
+        final List<String> workerArgs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            if (i + 1 < args.size() && OUT_OPTION.equalsIgnoreCase(args.get(i))) {
+                i++;
+            } else {
+                workerArgs.add(args.get(i));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(workerTask(i, workerArgs)));
+        }
+        executor.shutdown();
+
+        workers = new Worker[threads];
+        String msg = null;
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers[i] = futures.get(i).get();
+                if (msg == null && !workers[i].isPassed()) {
+                    log.print(workers[i].out);
+                    msg = workers[i].getReason();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            msg = e.toString();
+        } catch (ExecutionException e) {
+            msg = e.getCause().toString();
+        }
+
+        if (msg != null) {
+            executor.shutdownNow();
+            workers = null;
+            log.println(i18n.getString("SigFileDiff.error.worker", msg));
+            return error(msg);
+        }
+        return true;
+    }
+
+    private Callable<Worker> workerTask(final int shard, final List<String> args) {
+        return new Callable<Worker>() {
+            public Worker call() {
+                AppContext previous = AppContext.setContext(AppContext.newContext());
+                try {
+                    Worker w = new Worker(shard, threads, baseHashes, targetHashes);
+                    w.run(args.toArray(new String[0]), new PrintWriter(w.out, true), null);
+                    return w;
+                } finally {
+                    AppContext.setContext(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Classes of one package are compared by the same worker in the signature
+     * file order, as most of the class hierarchies are within a package.
+     */
+    private static int getShard(String className, int shards) {
+        int pos = className.lastIndexOf('.');
+        String pkg = pos < 0 ? "" : className.substring(0, pos);
+        return (pkg.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    @Override
+    protected boolean isUnchanged(ClassDescription required) {
+        if (workers != null) {
+            // compared by the workers
+            return true;
+        }
+        return isSameHash(required.getQualifiedName());
+    }
+
+    private boolean isSameHash(String name) {
+        if (baseHashes == null) {
+            return false;
+        }
+        Long h = baseHashes.getHash(name);
+        return h != null && h.equals(targetHashes.getHash(name));
+    }
+
+    @Override
+    protected void verifyUnchanged(ClassDescription required) {
+        String name = required.getQualifiedName();
+        if (workers == null || isSameHash(name)) {
+            super.verifyUnchanged(required);
+            return;
+        }
+        Worker w = workers[getShard(name, workers.length)];
+        List<Event> events = w.events.get(name);
+        if (events != null) {
+            for (Event e : events) {
+                e.replay(this);
+            }
+        }
+        if (w.isTracked(name)) {
+            track(name);
+        }
+    }
+
+    @Override
+    protected void usage() {
+        String nl = System.getProperty("line.separator");
+        System.err.println(i18n.getString("SigFileDiff.usage.start") +
+                nl + i18n.getString("SigFileDiff.usage.base", BASE_OPTION) +
+                nl + i18n.getString("SigFileDiff.usage.target", TARGET_OPTION) +
+                nl + i18n.getString("SigFileDiff.usage.threads", Option.THREADS.getKey()) +
+                nl + i18n.getString("SigFileDiff.usage.other"));
+        super.usage();
+    }
+
+    @Override
+    protected String getComponentName() {
+        return "Diff";
+    }
+
+    /**
+     * Result of the class comparison recorded by a worker
+     */
+    private abstract static class Event {
+        abstract void replay(SigFileDiff main);
+    }
+
+    /**
+     * Compares the changed classes of one shard and records the results
+     * per class instead of reporting them.
+     */
+    private static class Worker extends SigFileDiff {
+
+        private final int shard;
+        private final int shards;
+        private final ClassHashes base;
+        private final ClassHashes target;
+        private final StringWriter out = new StringWriter();
+        private final Map<String, List<Event>> events = new HashMap<>();
+        private List<Event> current;
+
+        Worker(int shard, int shards, ClassHashes base, ClassHashes target) {
+            this.shard = shard;
+            this.shards = shards;
+            this.base = base;
+            this.target = target;
+        }
+
+        @Override
+        public void run(String[] args, PrintWriter log, PrintWriter ref) {
+            // the arguments are already processed by the main test
+            super.runTest(args, log, ref);
+        }
+
+        @Override
+        protected boolean isUnchanged(ClassDescription required) {
+            String name = required.getQualifiedName();
+            if (getShard(name, shards) != shard) {
+                return true;
+            }
+            if (base != null) {
+                Long h = base.getHash(name);
+                if (h != null && h.equals(target.getHash(name))) {
+                    return true;
+                }
+            }
+            current = new ArrayList<>();
+            events.put(name, current);
+            return false;
+        }
+
+        @Override
+        protected void verifyUnchanged(ClassDescription required) {
+            // accounted by the main test
+        }
+
+        @Override
+        protected boolean isAddedApiChecked() {
+            // checked by the main test
+            return false;
+        }
+
+        @Override
+        protected void setErrorManager(ErrorFormatter em) {
+            super.setErrorManager(new Recorder());
+        }
+
+        @Override
+        public void storeError(final String s, final Logger utilLogger) {
+            record(new Event() {
+                void replay(SigFileDiff main) {
+                    main.storeError(s, utilLogger);
+                }
+            });
+        }
+
+        @Override
+        public void storeWarning(final String s, final Logger utilLogger) {
+            record(new Event() {
+                void replay(SigFileDiff main) {
+                    main.storeWarning(s, utilLogger);
+                }
+            });
+        }
+
+        private void record(Event e) {
+            if (current != null) {
+                current.add(e);
+            }
+        }
+
+        private class Recorder extends SortedErrorFormatter {
+
+            Recorder() {
+                super(new PrintWriter(out), false);
+            }
+
+            @Override
+            public void addError(final MessageType kind, final String className, final MemberType type,
+                                 final String def, final String tail, final MemberDescription errorObject) {
+                record(new Event() {
+                    void replay(SigFileDiff main) {
+                        main.getErrorManager().addError(kind, className, type, def, tail, errorObject);
+                    }
+                });
+            }
+
+            @Override
+            public void tested(final ClassDescription tested) {
+                record(new Event() {
+                    void replay(SigFileDiff main) {
+                        if (main.getErrorManager() instanceof SortedErrorFormatter) {
+                            ((SortedErrorFormatter) main.getErrorManager()).tested(tested);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void printErrors() {
+            }
+        }
+    }
+}
@@ -95,6 +95,10 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
      * required.
      */
     private ErrorFormatter errorManager;
+    /**
+     * Context of this run, captured when the object is created.
+     */
+    protected final AppContext context = AppContext.getContext();
 
     protected void setErrorManager(ErrorFormatter em) {
         errorManager = em;
@@ -128,6 +132,15 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
     // don't touch it! it's public static for compatibility
     // see CODETOOLS-7900229
     public static boolean isConstantValuesTracked = true;
+    /**
+     * Runs in the default context start with Java 5+ features tracking off
+     * if this field is false and clear it when they turn tracking off.
+     *
+     * @deprecated the value is kept by {@link AppContext}, use
+     * {@link #isTigerFeaturesTracked()}
+     */
+    @Deprecated
+    public static boolean isTigerFeaturesTracked = true;
     public final static int DefaultCacheSize = 1024;
     /**
      * <b>BinaryClassDescrLoader</b> may cache up to {@code cacheSize}
@@ -135,7 +148,6 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
      */
     protected int cacheSize = DefaultCacheSize;
 
-    public static boolean isTigerFeaturesTracked = false;
     private static boolean isJava8 = false;
     protected Plugin pluginClass = null;
 
@@ -145,18 +157,16 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
         excludedPackages = new PackageGroup(true);
         apiIncl = new PackageGroup(true);
         apiExcl = new PackageGroup(true);
+        if (!isTigerFeaturesTracked && context.isDefault()) {
+            context.setTigerFeaturesTracked(false);
+        }
     }
 
     static {
-        // Turn isTigerFeaturesTracked on if SigTest is running on Java version >= 5.0
         String specVersion;
         try {
             specVersion = System.getProperty("java.specification.version");
-            if ("1.5".compareTo(specVersion) <= 0) {
-                isTigerFeaturesTracked = true;
-            }
             if ("1.8".compareTo(specVersion) <= 0) {
-                isTigerFeaturesTracked = true;
                 isJava8 = true;
             }
         } catch (SecurityException e) {
@@ -168,7 +178,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
      * Enable diagnostics for inherited class members.
      */
     protected boolean isVerbose = false;
-    static boolean Xverbose = false;
+    boolean Xverbose = false;
     protected ClassHierarchy testableHierarchy;
     protected final Set<String> errorMessages = new HashSet<>();
     private ClassDescriptionLoader loader;
@@ -224,16 +234,16 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
 
     protected void setLog(PrintWriter w) {
         assert w != null;
-        AppContext.getContext().setLogWriter(w);
+        context.setLogWriter(w);
     }
 
     public PrintWriter getLog() {
-        return AppContext.getContext().getLogWriter();
+        return context.getLogWriter();
     }
 
     protected void decodeCommonOptions(String optionName, String[] args) throws CommandLineParserException {
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
 
         if (bo.readOptions(optionName, args)) {
             // convert -modules to -package
@@ -274,7 +284,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
         } else if (optionName.equalsIgnoreCase(ERRORALL_OPTION)) {
             reportWarningAsError = true;
         } else if (optionName.equalsIgnoreCase(XNOTIGER_OPTION)) {
-            isTigerFeaturesTracked = false;
+            setTigerFeaturesTracked(false);
         } else if (optionName.equalsIgnoreCase(XVERBOSE_OPTION)) {
             Xverbose = true;
         } else if (optionName.equalsIgnoreCase(VERBOSE_OPTION)) {
@@ -304,7 +314,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
 
     protected boolean processHelpOptions() {
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         if (bo.isSet(Option.HELP)) {
             usage();
             notrun();
@@ -360,7 +370,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
             return loader;
         }
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
 
         if (bo.isSet(Option.STATIC)) {
             //  static mode
@@ -381,14 +391,14 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
                 }
             }
 
-            if (isTigerFeaturesTracked) {
+            if (isTigerFeaturesTracked()) {
 
                 loader = getLoader("com.sun.tdk.signaturetest.loaders.TigerRefgClassDescrLoader", new Class[]{}, new Object[]{}, getLog());
                 if (loader != null) {
                     return loader;
                 }
 
-                isTigerFeaturesTracked = false; // sorry ...
+                setTigerFeaturesTracked(false); // sorry ...
             }
 
             loader = getLoader("com.sun.tdk.signaturetest.loaders.ReflClassDescrLoader", new Class[]{}, new Object[]{}, getLog());
@@ -402,7 +412,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
     }
 
     protected ClassDescription load(String name) {
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         try {
             return testableHierarchy.load(name);
         } catch (ClassNotFoundException e) {
@@ -439,7 +449,26 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
     }
 
     public boolean useErasurator() {
-        return !isTigerFeaturesTracked;
+        return !isTigerFeaturesTracked();
+    }
+
+    /**
+     * Returns true if generics, annotations and other Java 5+ features
+     * are tracked in this run.
+     */
+    protected boolean isTigerFeaturesTracked() {
+        return context.isTigerFeaturesTracked();
+    }
+
+    /**
+     * Sets Java 5+ features tracking for this run, the deprecated static
+     * {@link #isTigerFeaturesTracked} follows the default context
+     */
+    protected void setTigerFeaturesTracked(boolean tracked) {
+        context.setTigerFeaturesTracked(tracked);
+        if (context.isDefault()) {
+            isTigerFeaturesTracked = tracked;
+        }
     }
 
     protected abstract void usage();
@@ -447,7 +476,7 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
     protected abstract String getComponentName();
 
     protected Plugin loadPlugin(String pluginClassName) {
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         try {
             Constructor ctor = Class.forName(pluginClassName).getConstructor();
             return (Plugin) ctor.newInstance(new Object[0]);
@@ -591,10 +620,10 @@ public abstract class SigTest extends Result implements PluginAPI, Log {
      * Descriptions for all classes found at the specified classpath.
      */
     protected Classpath getClasspath() {
-        return AppContext.getContext().getInputClasspath();
+        return context.getInputClasspath();
     }
 
     protected void setClasspath(Classpath classpath) {
-        AppContext.getContext().setInputClasspath(classpath);
+        context.setInputClasspath(classpath);
     }
 }
@@ -36,6 +36,7 @@ import com.sun.tdk.signaturetest.model.*;
 import com.sun.tdk.signaturetest.plugin.Filter;
 import com.sun.tdk.signaturetest.plugin.PluginAPI;
 import com.sun.tdk.signaturetest.plugin.Transformer;
+import com.sun.tdk.signaturetest.sigfile.ClassUpdate;
 import com.sun.tdk.signaturetest.sigfile.FeaturesHolder;
 import com.sun.tdk.signaturetest.sigfile.MultipleFileReader;
 import com.sun.tdk.signaturetest.updater.Updater;
@@ -215,7 +216,7 @@ public class SignatureTest extends SigTest {
     public void run(String[] args, PrintWriter log, PrintWriter ref) {
 
 //        long startTime = System.currentTimeMillis();
-        AppContext.getContext().clean();
+        context.clean();
         setLog(log);
         mode = null;
         try {
@@ -265,8 +266,8 @@ public class SignatureTest extends SigTest {
     private boolean parseParameters(String[] args) {
 
         CommandLineParser parser = new CommandLineParser(this, "-");
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
-        TestOptions to = AppContext.getContext().getBean(TestOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
+        TestOptions to = context.getBean(TestOptions.class);
 
         args = exclude.parseParameters(args);
 
@@ -403,7 +404,7 @@ public class SignatureTest extends SigTest {
 
     public void decodeOptions(String optionName, String[] args) throws CommandLineParserException {
 
-        TestOptions to = AppContext.getContext().getBean(TestOptions.class);
+        TestOptions to = context.getBean(TestOptions.class);
         if (to.readOptions(optionName, args)) return;
 
         if (optionName.equalsIgnoreCase(FILES_OPTION)) {
@@ -498,7 +499,7 @@ public class SignatureTest extends SigTest {
     }
 
     public boolean useErasurator() {
-        return !isTigerFeaturesTracked || BINARY_MODE.equals(mode);
+        return !isTigerFeaturesTracked() || BINARY_MODE.equals(mode);
     }
 
     /**
@@ -508,8 +509,8 @@ public class SignatureTest extends SigTest {
      */
     private boolean check() {
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
-        TestOptions to = AppContext.getContext().getBean(TestOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
+        TestOptions to = context.getBean(TestOptions.class);
 
         String sigFileName = bo.getValue(Option.FILE_NAME);
         String testURL = bo.getValue(Option.TEST_URL);
@@ -563,21 +564,6 @@ public class SignatureTest extends SigTest {
             readMode = MultipleFileReader.CLASSPATH_MODE;
         }
 
-        // apply update file if it was specified
-        if (updateFileName != null) {
-            try {
-                Updater up = new Updater();
-                File res = File.createTempFile("sigtest", "sig");
-                String resFileName = res.getAbsolutePath();
-                res.deleteOnExit();
-                up.perform(updateFileName, sigFileName, resFileName, log);
-                sigFileName = resFileName;
-            } catch (IOException e) {
-                SwissKnife.reportThrowable(e);
-            }
-
-        }
-
         MultipleFileReader in = new MultipleFileReader(log, readMode, getFileManager());
         String linesep = System.getProperty("line.separator");
         boolean result;
@@ -585,6 +571,17 @@ public class SignatureTest extends SigTest {
         if (sigFileNameList != null) {
             result = in.readSignatureFiles(testURL, sigFileNameList);
         } else {
+            // apply update file if it was specified
+            if (updateFileName != null) {
+                ClassUpdate update = new Updater().readUpdate(updateFileName, log);
+                if (update == null) {
+                    in.close();
+                    msg = i18nSt.getString("SignatureTest.error.update", updateFileName);
+                    log.println(msg);
+                    return error(msg);
+                }
+                in.setUpdate(update);
+            }
             result = in.readSignatureFile(testURL, sigFileName);
         }
 
@@ -648,6 +645,8 @@ public class SignatureTest extends SigTest {
                 }
                 if (to.isSet(Option.CHECK_EXCESS_CLASSES_ONLY)) {
                     trackedClassNames.add(currentClass.getQualifiedName());
+                } else if (isUnchanged(currentClass)) {
+                    verifyUnchanged(currentClass);
                 } else {
                     if (buildMembers && sigfileMCBuilder != null) {
                         try {
@@ -677,7 +676,7 @@ public class SignatureTest extends SigTest {
                         }
                     }
 
-                    if (currentClass.isModuleOrPackaheInfo() && isTigerFeaturesTracked) {
+                    if (currentClass.isModuleOrPackaheInfo() && isTigerFeaturesTracked()) {
                         verifyMduleOrPackageInfo(currentClass);
                     } else {
                         verifyClass(currentClass, supportNSC);
@@ -721,12 +720,14 @@ public class SignatureTest extends SigTest {
         }
 
         //  Finished - the sigfile closed.
-        if (!isSupersettingEnabled) {
-            checkAddedClasses();
-        }
+        if (isAddedApiChecked()) {
+            if (!isSupersettingEnabled) {
+                checkAddedClasses();
+            }
 
-        if (isTigerFeaturesTracked) {
-            checkAddedPackages();
+            if (isTigerFeaturesTracked()) {
+                checkAddedPackages();
+            }
         }
 
         int auxErrorCount = 0;
@@ -760,6 +761,55 @@ public class SignatureTest extends SigTest {
         return false;
     }
 
+    /**
+     * Returns true if the given class is known to be the same in the tested
+     * API so its verification can be skipped
+     */
+    protected boolean isUnchanged(ClassDescription required) {
+        return false;
+    }
+
+    /**
+     * Accounts the class skipped by {@link #isUnchanged(ClassDescription)} as
+     * tested
+     */
+    protected void verifyUnchanged(ClassDescription required) {
+        String name = required.getQualifiedName();
+        if (!isPackageMember(name)) {
+            return;
+        }
+        trackedClassNames.add(name);
+        try {
+            exclude.check(required, required);
+        } catch (ExcludeException e) {
+            return;
+        }
+        if (getErrorManager() instanceof SortedErrorFormatter) {
+            ClassDescription found = required;
+            try {
+                found = testableHierarchy.load(name);
+            } catch (ClassNotFoundException e) {
+                // the description is the same in both APIs
+            }
+            ((SortedErrorFormatter) getErrorManager()).tested(found);
+        }
+    }
+
+    // Can be overriden in an extension which verifies only a part of
+    // the signature file, allows to skip the check for added classes
+    // and packages
+    protected boolean isAddedApiChecked() {
+        return true;
+    }
+
+    boolean isTracked(String className) {
+        return trackedClassNames.contains(className);
+    }
+
+    void track(String className) {
+        trackedClassNames.add(className);
+    }
+
     // Can be overriden in an extension, allows to disable
     // normalization methods throw list for required set
     // in api check mode
@@ -798,7 +848,7 @@ public class SignatureTest extends SigTest {
                 checkAddedClass(name);
             }
         } catch (SecurityException ex) {
-            BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+            BaseOptions bo = context.getBean(BaseOptions.class);
             if (bo.isSet(Option.DEBUG)) {
                 SwissKnife.reportThrowable(ex);
             }
@@ -809,11 +859,11 @@ public class SignatureTest extends SigTest {
 
     private void checkAddedClass(String name) {
         if (!trackedClassNames.contains(name) && isPackageMember(name)) {
-            BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+            BaseOptions bo = context.getBean(BaseOptions.class);
             try {
                 ClassDescription c = testableHierarchy.load(name);
                 if (c.isModuleOrPackaheInfo()) {
-                    if (isTigerFeaturesTracked) {
+                    if (isTigerFeaturesTracked()) {
                         checkAnnotations(null, c, null, null, null, testableHierarchy);
                     }
                 } else {
@@ -911,7 +961,7 @@ public class SignatureTest extends SigTest {
         // checks that package from tested API
 
         String name = required.getQualifiedName();
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
 
         if (!isPackageMember(name)) {
             return passed();
@@ -1048,7 +1098,7 @@ public class SignatureTest extends SigTest {
 
     private void verifyMduleOrPackageInfo(ClassDescription required) {
 
-        assert (isTigerFeaturesTracked);
+        assert (isTigerFeaturesTracked());
 
         // checks that package from tested API
         String name = required.getQualifiedName();
@@ -1331,7 +1381,7 @@ public class SignatureTest extends SigTest {
                                   ClassDescription baseCl, ClassDescription testCl,
                                   ClassHierarchy baseCh, ClassHierarchy testCh) {
 
-        if (!isTigerFeaturesTracked) {
+        if (!isTigerFeaturesTracked()) {
             return;
         }
 
@@ -1351,7 +1401,7 @@ public class SignatureTest extends SigTest {
             normalizeArrayParaemeters(testAnnotList, orderImportant, testCh);
         }
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         // RI JSR 308 doesn't support reflection yet
         if (!bo.isSet(Option.STATIC)) {
             baseAnnotList = removeExtendedAnnotations(baseAnnotList);
@@ -1433,7 +1483,7 @@ public class SignatureTest extends SigTest {
 
     protected boolean prepareCheck(MultipleFileReader in, PrintWriter log) {
 
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
 
         if (isValueTracked == null) {
             isValueTracked = Boolean.TRUE;
@@ -1490,7 +1540,7 @@ public class SignatureTest extends SigTest {
             log.println(i18nSt.getString("SignatureTest.mesg.sigtest.constcheck", i18nSt.getString("SignatureTest.mesg.sigtest.constcheck.off")));
         }
 
-        if (!isTigerFeaturesTracked) {
+        if (!isTigerFeaturesTracked()) {
             log.println(i18nSt.getString("SignatureTest.mesg.sigtest.tigercheck"));
         }
 
@@ -1503,7 +1553,7 @@ public class SignatureTest extends SigTest {
         ClassDescriptionLoader loader = getClassDescrLoader();
         setupLoaders(loader, in);
         loader = getClassDescrLoader();
-        AppContext.getContext().setClassLoader(loader);
+        context.setClassLoader(loader);
 
         if (!isValueTracked && loader instanceof LoadingHints) {
             ((LoadingHints) loader).addLoadingHint(LoadingHints.DONT_READ_VALUES);
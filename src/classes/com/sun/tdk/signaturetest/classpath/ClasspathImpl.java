@@ -371,6 +371,7 @@ public class ClasspathImpl implements Classpath {
 
     private static boolean isSigFile(String fName) {
         // first version, later ti analise the content
-        return fName.toLowerCase().endsWith(".sig");
+        String name = fName.toLowerCase();
+        return name.endsWith(".sig") || name.endsWith(".sig.gz") || name.endsWith(".sig.zz");
     }
 }
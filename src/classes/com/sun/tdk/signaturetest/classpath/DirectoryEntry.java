@@ -47,6 +47,7 @@ class DirectoryEntry extends ClasspathEntry {
      * The qualified name of {@code this} directory.
      */
     private String directoryName = "";
+    private final AppContext context = AppContext.getContext();
 
     public DirectoryEntry(ClasspathEntry previous, String name) throws IOException {
         super(previous);
@@ -102,7 +103,7 @@ class DirectoryEntry extends ClasspathEntry {
         } while (pos != -1);
 
         // -----------------------------------------------------------------
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         try {
             String[] files = directory.list();
             if (files == null) {
@@ -49,6 +49,7 @@ public class EnumPlatformClasspathImpl implements Classpath {
 
     private List<String> classes;
     private Iterator<String> it;
+    private final AppContext context = AppContext.getContext();
 
     @Override
     public void init(String classPath) throws IOException {
@@ -97,7 +98,7 @@ public class EnumPlatformClasspathImpl implements Classpath {
 
     @Override
     public ClassDescription findClassDescription(String className) throws ClassNotFoundException {
-        ClassDescriptionLoader l = AppContext.getContext().getClassLoader();
+        ClassDescriptionLoader l = context.getClassLoader();
         assert l != null;
         if (l != null) {
             return l.load(className);
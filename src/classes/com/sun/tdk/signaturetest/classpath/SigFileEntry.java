@@ -45,6 +45,7 @@ public class SigFileEntry extends ClasspathEntry implements ClassDescriptionLoad
 
     TreeMap<String, ClassDescription> readClasses;
     Iterator<Map.Entry<String, ClassDescription>> it;
+    private final AppContext context = AppContext.getContext();
 
     public SigFileEntry(ClasspathEntry previousEntry, String sigfile) throws IOException {
         super(previousEntry);
@@ -54,7 +55,7 @@ public class SigFileEntry extends ClasspathEntry implements ClassDescriptionLoad
     @Override
     public void init(String sigFileName) throws IOException {
         FileManager fm = new FileManager();
-        PrintWriter log = AppContext.getContext().getLogWriter();
+        PrintWriter log = context.getLogWriter();
         MultipleFileReader in = new MultipleFileReader(log, MultipleFileReader.CLASSPATH_MODE, fm);
 
         if (!in.readSignatureFile("", sigFileName)) {
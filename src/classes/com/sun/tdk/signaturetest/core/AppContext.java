@@ -34,6 +34,11 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Application's context holder
  * Stores environmental values such as options and settings
+ * <p>
+ * By default all runs share the same context. Concurrent runs in one JVM
+ * need separate contexts: a thread binds a new context with
+ * {@code AppContext.setContext(AppContext.newContext())} before it creates
+ * the test objects. Threads started by the run inherit its context.
  *
  * @author Mikhail Ershov
  */
@@ -47,8 +52,41 @@ public abstract class AppContext {
         public static final AppContext INSTANCE = new AppContextImpl();
     }
 
+    // context bound to the current thread, the default one if not set
+    private static final InheritableThreadLocal<AppContext> scoped = new InheritableThreadLocal<>();
+
     public static AppContext getContext() {
-        return AppContextHolder.INSTANCE;
+        AppContext c = scoped.get();
+        return c != null ? c : AppContextHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a context independent of the default one
+     */
+    public static AppContext newContext() {
+        return new AppContextImpl();
+    }
+
+    /**
+     * Binds the context to the current thread, null restores the default
+     * context. Returns the context bound before.
+     */
+    public static AppContext setContext(AppContext context) {
+        AppContext previous = scoped.get();
+        if (context == null) {
+            scoped.remove();
+        } else {
+            scoped.set(context);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns true for the context shared by the threads which didn't bind
+     * their own one
+     */
+    public boolean isDefault() {
+        return this == AppContextHolder.INSTANCE;
     }
 
     public abstract String getString(String id);
@@ -73,6 +111,10 @@ public abstract class AppContext {
 
     public abstract ClassDescriptionLoader getClassLoader();
 
+    public abstract boolean isTigerFeaturesTracked();
+
+    public abstract void setTigerFeaturesTracked(boolean tracked);
+
     private static class AppContextImpl extends AppContext {
 
         private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
@@ -80,6 +122,7 @@ public abstract class AppContext {
         private PrintWriter log;
         private Classpath cp;
         private ClassDescriptionLoader loader;
+        private boolean tigerFeaturesTracked = true;
 
         @Override
         public void setString(String id, String value) {
@@ -126,6 +169,7 @@ public abstract class AppContext {
             beans.clear();
             log = null;
             cp = null;
+            tigerFeaturesTracked = true;
             return this;
         }
 
@@ -148,6 +192,16 @@ public abstract class AppContext {
         public ClassDescriptionLoader getClassLoader() {
             return loader;
         }
+
+        @Override
+        public boolean isTigerFeaturesTracked() {
+            return tigerFeaturesTracked;
+        }
+
+        @Override
+        public void setTigerFeaturesTracked(boolean tracked) {
+            tigerFeaturesTracked = tracked;
+        }
     }
 }
 
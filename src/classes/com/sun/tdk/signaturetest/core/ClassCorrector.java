@@ -51,6 +51,8 @@ public class ClassCorrector implements Transformer {
 
     protected ClassHierarchy classHierarchy = null;
     private final Log log;
+    // shortest superinterface paths by target interface and start interface
+    private final Map<String, Map<String, InterfacePath>> interfacePaths = new HashMap<>();
     private static final I18NResourceBundle i18n = I18NResourceBundle.getBundleForClass(ClassCorrector.class);
 
     public ClassCorrector(Log log) {
@@ -59,6 +61,9 @@ public class ClassCorrector implements Transformer {
 
     public ClassDescription transform(ClassDescription cl) throws ClassNotFoundException {
 
+        if (classHierarchy != cl.getClassHierarchy()) {
+            interfacePaths.clear();
+        }
         classHierarchy = cl.getClassHierarchy();
 
         replaceInvisibleExceptions(cl);
@@ -206,47 +211,77 @@ public class ClassCorrector implements Transformer {
         return replacement;
     }
 
-    private void getPaths2(List<ArrayList<String>> paths, List<String> currentPath, String intFrom, String intTo) {
+    /**
+     * Finds the path of superinterfaces from intFrom to intTo with the fewest
+     * visible interfaces and returns the visible one nearest to intTo, or
+     * null if there is no such path or it has no visible interfaces. Of the
+     * equally short paths the first one in the superinterface order is taken.
+     */
+    private String findVisibleOnPath(String intFrom, String intTo) {
+        Map<String, InterfacePath> found = interfacePaths.get(intTo);
+        if (found == null) {
+            found = new HashMap<>();
+            interfacePaths.put(intTo, found);
+        }
+        InterfacePath p = getPath(found, intFrom, intTo);
+        return p == null ? null : p.lastVisible;
+    }
+
+    private InterfacePath getPath(Map<String, InterfacePath> found, String intFrom, String intTo) {
+        if (found.containsKey(intFrom)) {
+            return found.get(intFrom);
+        }
+        // guards against cycles in broken hierarchies
+        found.put(intFrom, null);
+
         String[] sis = new String[]{};
         try {
             sis = classHierarchy.getSuperInterfaces(intFrom);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
         }
-        currentPath.add(intFrom);
+
+        InterfacePath best = null;
         for (String si : sis) {
-            if (!si.equals(intTo)) {
-                getPaths2(paths, currentPath, si, intTo);
-                currentPath.remove(currentPath.size() - 1);
+            InterfacePath p = si.equals(intTo) ? InterfacePath.END : getPath(found, si, intTo);
+            if (p != null && (best == null || p.visibleCount < best.visibleCount)) {
+                best = p;
+            }
+        }
+
+        InterfacePath result = null;
+        if (best != null) {
+            boolean visible = true;
+            try {
+                visible = classHierarchy.isAccessible(intFrom);
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+            if (visible) {
+                result = new InterfacePath(best.visibleCount + 1, best.lastVisible != null ? best.lastVisible : intFrom);
             } else {
-                paths.add(new ArrayList<>(currentPath));
+                result = best;
             }
         }
+        found.put(intFrom, result);
+        return result;
     }
 
-    private void getPaths(List<ArrayList<String>> paths, List<String> currentPath, String intFrom, String intTo) {
-        getPaths2(paths, currentPath, intFrom, intTo);
-        // remove invisible elements
-        for (List<String> path : paths) {
-            for (Iterator<String> it2 = path.iterator(); it2.hasNext(); ) {
-                String cl = it2.next();
-                try {
-                    if (!classHierarchy.isAccessible(cl)) {
-                        it2.remove();
-                    }
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * Shortest path found from an interface: the number of visible
+     * interfaces on it and the last of them.
+     */
+    private static class InterfacePath {
+
+        static final InterfacePath END = new InterfacePath(0, null);
+
+        final int visibleCount;
+        final String lastVisible;
+
+        InterfacePath(int visibleCount, String lastVisible) {
+            this.visibleCount = visibleCount;
+            this.lastVisible = lastVisible;
         }
-        // sort - shorten paths first
-        Collections.sort(paths, new Comparator<List<?>>() {
-            public int compare(List<?> o1, List<?> o2) {
-                Integer s1 = o1.size();
-                Integer s2 = o2.size();
-                return s1.compareTo(s2);
-            }
-        });
     }
 
     private String findVisibleReplacement(String clName, List<String> supers, String replaceWithClassName, boolean findToSuper) {
@@ -254,14 +289,9 @@ public class ClassCorrector implements Transformer {
         // if this member is from interface...
         try {
             if (classHierarchy.isInterface(clName)) {
-                ArrayList<ArrayList<String>> paths = new ArrayList<>();
-                List<String> currentPath = new ArrayList<>();
-                getPaths(paths, currentPath, replaceWithClassName, clName);
-                if (!paths.isEmpty()) {
-                    ArrayList<String> shorterPath = paths.get(0);
-                    if (!shorterPath.isEmpty()) {
-                        return shorterPath.get(shorterPath.size() - 1);
-                    }
+                String visible = findVisibleOnPath(replaceWithClassName, clName);
+                if (visible != null) {
+                    return visible;
                 }
             }
         } catch (ClassNotFoundException e) {
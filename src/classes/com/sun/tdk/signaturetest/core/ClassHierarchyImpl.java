@@ -45,6 +45,7 @@ public class ClassHierarchyImpl implements ClassHierarchy {
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
     private final ClassDescriptionLoader loader;
+    private final AppContext context = AppContext.getContext();
     /**
      * If the {@code trackMode} field equals to {@code ALL_PUBLIC},
      * every {@code public} or {@code protected} class is considered
@@ -61,7 +62,7 @@ public class ClassHierarchyImpl implements ClassHierarchy {
 
     public ClassHierarchyImpl(ClassDescriptionLoader loader) {
         this.loader = loader;
-        BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+        BaseOptions bo = context.getBean(BaseOptions.class);
         if (bo.isSet(Option.ALL_PUBLIC)) {
             trackMode = ALL_PUBLIC;
         } else {
@@ -238,8 +239,7 @@ public class ClassHierarchyImpl implements ClassHierarchy {
         try {
             c = loader.load(name);
         } catch (ClassNotFoundException ce) {
-            assert AppContext.getContext() != null;
-            Classpath cp = AppContext.getContext().getInputClasspath();
+            Classpath cp = context.getInputClasspath();
             if (cp != null) {
                 c = cp.findClassDescription(name);
             } else {
@@ -491,7 +491,7 @@ public class ClassHierarchyImpl implements ClassHierarchy {
     }
 
     private final HashMap<String, ClassInfo> processedClasses = new HashMap<>();
-    private final BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+    private final BaseOptions bo = context.getBean(BaseOptions.class);
 
     class DefaultIsAccessibleFilter implements Filter {
 
@@ -54,9 +54,46 @@ public class ClassSet {
         }
     }
 
+    /**
+     * What is needed to follow references from a loaded class
+     */
+    private final static class Node {
+
+        // superclass added for invisible classes referenced from other
+        // classes, null if not needed
+        final String invisibleSuperclass;
+        final Set<String> dependences;
+
+        Node(String invisibleSuperclass, Set<String> dependences) {
+            this.invisibleSuperclass = invisibleSuperclass;
+            this.dependences = dependences;
+        }
+    }
+
+    /**
+     * Class being processed. Frames are kept in an explicit stack, so deep
+     * chains of references don't overflow the thread stack. Classes are
+     * visited in the same depth-first order as a recursive walk would do
+     * which matters for the reference counters.
+     */
+    private final static class Frame {
+
+        final String fqname;
+        final Node node;
+        boolean superclassAdded;
+        Iterator<String> dependences;
+
+        Frame(String fqname, Node node) {
+            this.fqname = fqname;
+            this.node = node;
+        }
+    }
+
     private final ClassHierarchy hierarchy;
     private final boolean trackDependeces;
-    private final Map<String, Object> classNamesInProcess = new HashMap<>();
+    private final Set<String> classNamesInProcess = new HashSet<>();
+    // each class is loaded once
+    private final Map<String, Node> nodes = new HashMap<>();
 
     public ClassSet(ClassHierarchy hierarchy, boolean trackDependeces) {
         this.hierarchy = hierarchy;
@@ -64,95 +101,132 @@ public class ClassSet {
     }
 
     public void addClass(String fqname) {
-        addClass(fqname, true);
-    }
-
-    private void addClass(String fqname, boolean externalCall) {
-
-        if (classNamesInProcess.get(fqname) != null) {
-            return;
-        }
-
-        classNamesInProcess.put(fqname, null);
-
-        try {
-            Counter counter = classes.get(fqname);
-            try {
-
-                ClassDescription cl = hierarchy.load(fqname);
-                // acrobatic feat : ClassCorrector replaces invisible class
-                // with nearest visible subclass
-                // Note: this is a temporary solution!
-                if (!hierarchy.isAccessible(cl) && !externalCall) {
-                    if (!cl.isInterface()) {
-                        addClass(cl.getSuperClass().getQualifiedName(), false);
-                    }
+        Deque<Frame> stack = new ArrayDeque<>();
+        push(stack, fqname, true);
+
+        while (!stack.isEmpty()) {
+            Frame f = stack.peek();
+
+            // acrobatic feat : ClassCorrector replaces invisible class
+            // with nearest visible subclass
+            // Note: this is a temporary solution!
+            if (!f.superclassAdded) {
+                f.superclassAdded = true;
+                if (f.node.invisibleSuperclass != null) {
+                    push(stack, f.node.invisibleSuperclass, false);
+                    continue;
                 }
+            }
 
+            if (f.dependences == null) {
+                Counter counter = classes.get(f.fqname);
                 if (counter == null) {
-                    classes.put(fqname, new Counter(0));
-
-                    if (trackDependeces) {
-                        Set<String> dep = cl.getDependences();
-                        for (String o : dep) {
-                            addClass(o, false);
-                        }
-                    }
-
+                    classes.put(f.fqname, new Counter(0));
+                    f.dependences = trackDependeces ? f.node.dependences.iterator()
+                            : Collections.<String>emptyIterator();
                 } else {
                     counter.increment();
+                    f.dependences = Collections.emptyIterator();
                 }
-
-            } catch (ClassNotFoundException e) {
-                missingClasses.add(fqname);
             }
 
-        } finally {
-            classNamesInProcess.remove(fqname);
+            if (f.dependences.hasNext()) {
+                push(stack, f.dependences.next(), false);
+            } else {
+                stack.pop();
+                classNamesInProcess.remove(f.fqname);
+            }
         }
     }
 
-    public void removeClass(String fqname) {
-
-        if (classNamesInProcess.get(fqname) != null) {
+    private void push(Deque<Frame> stack, String fqname, boolean externalCall) {
+        if (classNamesInProcess.contains(fqname)) {
             return;
         }
+        Node node = getNode(fqname);
+        if (node == null) {
+            missingClasses.add(fqname);
+            return;
+        }
+        if (externalCall && node.invisibleSuperclass != null) {
+            node = new Node(null, node.dependences);
+        }
+        classNamesInProcess.add(fqname);
+        stack.push(new Frame(fqname, node));
+    }
 
-        classNamesInProcess.put(fqname, null);
-
+    private Node getNode(String fqname) {
+        if (nodes.containsKey(fqname)) {
+            return nodes.get(fqname);
+        }
+        Node node = null;
         try {
+            ClassDescription cl = hierarchy.load(fqname);
+            String superclass = null;
+            if (!hierarchy.isAccessible(cl) && !cl.isInterface() && cl.getSuperClass() != null) {
+                superclass = cl.getSuperClass().getQualifiedName();
+            }
+            node = new Node(superclass, cl.getDependences());
+        } catch (ClassNotFoundException e) {
+            // node stays null
+        }
+        nodes.put(fqname, node);
+        return node;
+    }
 
-            Counter counter = classes.get(fqname);
-            if (counter != null) {
-
-                int c = counter.intValue();
-                if (c == 0) {
-                    classes.remove(fqname);
-
-                    try {
-                        ClassDescription cl = hierarchy.load(fqname);
-
-                        Set<String> dep = cl.getDependences();
-                        for (String o : dep) {
-                            removeClass(o);
-                        }
+    public void removeClass(String fqname) {
+        if (classNamesInProcess.contains(fqname)) {
+            return;
+        }
 
-                    } catch (ClassNotFoundException e) {
-                        assert missingClasses.contains(fqname);
-                    }
+        Deque<Frame> stack = new ArrayDeque<>();
+        Frame f = removeOne(fqname);
+        if (f != null) {
+            stack.push(f);
+        }
 
-                } else {
-                    assert c > 0;
-                    counter.decrement();
+        while (!stack.isEmpty()) {
+            f = stack.peek();
+            String dep = f.dependences.hasNext() ? f.dependences.next() : null;
+            if (dep == null) {
+                stack.pop();
+                classNamesInProcess.remove(f.fqname);
+            } else if (!classNamesInProcess.contains(dep)) {
+                Frame next = removeOne(dep);
+                if (next != null) {
+                    stack.push(next);
                 }
-
-            } else {
-                assert true;
             }
-        } finally {
-            classNamesInProcess.remove(fqname);
         }
+    }
 
+    /**
+     * Decrements the counter of the class or removes the class. Returns the
+     * frame to remove its dependences with if the class is removed.
+     */
+    private Frame removeOne(String fqname) {
+        Counter counter = classes.get(fqname);
+        if (counter == null) {
+            return null;
+        }
+
+        int c = counter.intValue();
+        if (c != 0) {
+            assert c > 0;
+            counter.decrement();
+            return null;
+        }
+
+        classes.remove(fqname);
+        Node node = getNode(fqname);
+        if (node == null) {
+            assert missingClasses.contains(fqname);
+            return null;
+        }
+        classNamesInProcess.add(fqname);
+        Frame f = new Frame(fqname, node);
+        f.dependences = node.dependences.iterator();
+        return f;
     }
 
     public Set<String> getClasses() {
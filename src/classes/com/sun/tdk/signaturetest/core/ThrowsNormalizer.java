@@ -28,8 +28,11 @@ import com.sun.tdk.signaturetest.model.ClassDescription;
 import com.sun.tdk.signaturetest.model.MemberDescription;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Normalize the throws list completely for 'src' mode
@@ -59,6 +62,22 @@ public class ThrowsNormalizer {
         return candidate.equals(matchedException) || h.isSubclass(candidate, matchedException);
     }
 
+    private boolean isUnchecked(ClassHierarchy h, String exception, boolean removeJLE) throws ClassNotFoundException {
+        Map<String, Integer> kinds = cache.kinds;
+        Integer kind = kinds.get(exception);
+        if (kind == null) {
+            if (checkException(h, exception, "java.lang.RuntimeException")) {
+                kind = RUNTIME;
+            } else if (checkException(h, exception, "java.lang.Error")) {
+                kind = ERROR;
+            } else {
+                kind = CHECKED;
+            }
+            kinds.put(exception, kind);
+        }
+        return kind == RUNTIME || (removeJLE && kind == ERROR);
+    }
+
     private void normThrows(ClassHierarchy h, MemberDescription mr, boolean removeJLE, boolean allowMissingTh) throws ClassNotFoundException {
         assert mr.isMethod() || mr.isConstructor();
 
@@ -66,6 +85,21 @@ public class ThrowsNormalizer {
 
         if (!throwables.isEmpty()) {
 
+            if (cache == null || cache.hierarchy != h) {
+                cache = caches.get(h);
+                if (cache == null) {
+                    cache = new Cache(h);
+                    caches.put(h, cache);
+                }
+            }
+            // the same throws lists are met in many methods
+            String key = (removeJLE ? "1" : "0") + (allowMissingTh ? "1" : "0") + throwables;
+            String normalized = cache.lists.get(key);
+            if (normalized != null) {
+                mr.setThrowables(normalized);
+                return;
+            }
+
             xthrows.clear();
 
             {
@@ -104,8 +138,7 @@ public class ThrowsNormalizer {
 
                 if (s.charAt(0) != '{' /* if not generic */) {
 
-                    if (checkException(h, s, "java.lang.RuntimeException")
-                            || (removeJLE && checkException(h, s, "java.lang.Error"))) {
+                    if (isUnchecked(h, s, removeJLE)) {
                         xthrows.set(i, null);
                         superfluousExceptionCount++;
                     } else {
@@ -151,9 +184,33 @@ public class ThrowsNormalizer {
                     mr.setThrowables(sb.toString());
                 }
             }
+            cache.lists.put(key, mr.getThrowables());
         }
     }
 
+    /**
+     * Exception kinds and normalized throws lists found in a class hierarchy
+     */
+    private static class Cache {
+
+        final ClassHierarchy hierarchy;
+        final Map<String, Integer> kinds = new HashMap<>();
+        final Map<String, String> lists = new HashMap<>();
+
+        Cache(ClassHierarchy hierarchy) {
+            this.hierarchy = hierarchy;
+        }
+    }
+
+    private static final int CHECKED = 0;
+    private static final int RUNTIME = 1;
+    private static final int ERROR = 2;
+
+    // a test run can normalize classes of two hierarchies, e.g. the signature
+    // file and the tested API
+    private final Map<ClassHierarchy, Cache> caches = new IdentityHashMap<>();
+    private Cache cache;
+
     private final List<String> xthrows = new ArrayList<>();
     private final StringBuffer sb = new StringBuffer();
 }
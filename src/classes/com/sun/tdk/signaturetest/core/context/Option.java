@@ -50,11 +50,12 @@ public enum Option {
     FILES("-Files", Kind.REQ_LIST), // merge's
     WRITE("-Write", Kind.SINGLE_OPT), // merge's
     BINARY("-Binary", Kind.NONE),  // merge's
+    STREAM("-Stream", Kind.NONE),  // merge's
     VERSION("-Version", "-V", Kind.INSTEAD_OF_ANY),
 
     // APICOV
     API("-api", Kind.SINGLE_OPT),
-    TS("-ts", Kind.SINGLE_REQ),
+    TS("-ts", Kind.SINGLE_OPT),
     TS_ICNLUDE("-tsInclude", Kind.MANY_OPT),
     TS_ICNLUDEW("-tsIncludeW", Kind.MANY_OPT),
     TS_EXCLUDE("-tsExclude", Kind.MANY_OPT),
@@ -62,6 +63,11 @@ public enum Option {
 
     FILTERMAP("-FilterMap", Kind.MANY_OPT),
     FILTERSIG("-FilterSig", Kind.MANY_OPT),
+    THREADS("-threads", Kind.SINGLE_OPT),
+    CACHE("-cache", Kind.SINGLE_OPT),
+    SHARD("-shard", Kind.SINGLE_OPT),
+    COUNTS("-counts", Kind.MANY_OPT),
+    WRITE_COUNTS("-writeCounts", Kind.SINGLE_OPT),
 
 
     EXCLUDE_INTERFACES("-excludeInterfaces", Kind.NONE),
@@ -31,8 +31,7 @@ import com.sun.tdk.signaturetest.util.I18NResourceBundle;
 import com.sun.tdk.signaturetest.util.SwissKnife;
 
 import java.io.PrintWriter;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 /**
  * This is backward compatibility postprocessor.
@@ -47,7 +46,15 @@ public class BCProcessor extends HumanErrorFormatter {
     private final ClassHierarchy clHier;
     private final ClassHierarchy sfHier;
     private static final I18NResourceBundle i18n = I18NResourceBundle.getBundleForClass(BCProcessor.class);
-    private ClassDescription objectClass;
+    private Set<String> objectMethods;
+    private Handler[] rules;
+    // rules applicable to single messages and to pairs by message type
+    private final Map<MessageType, Handler[]> singleRules = new HashMap<>();
+    private final Map<MessageType, Handler[]> pairedRules = new HashMap<>();
+    // facts about classes of the tested API and of the signature file,
+    // null values stand for not found classes
+    private final Map<String, ClassFacts> clFacts = new HashMap<>();
+    private final Map<String, ClassFacts> sfFacts = new HashMap<>();
 
     /**
      * Assign the given <b>PrintWriter</b> to print error messages.
@@ -62,7 +69,48 @@ public class BCProcessor extends HumanErrorFormatter {
 
     protected Handler constructHandlerChain() {
 
-        Handler[] handlers = {
+        Handler[] handlers = createRules();
+
+        // link them
+        for (int i = 0; i < handlers.length - 1; i++) {
+            handlers[i].setNext(handlers[i + 1]);
+        }
+
+        return handlers[0];
+    }
+
+    /**
+     * Passes the group only to the rules applicable to its size and message
+     * type. The chain of rules is constructed once and applied in order.
+     */
+    protected void processGroup(List<Message> group, Chain ch) {
+        MessageType type = group.get(0).messageType;
+        Map<MessageType, Handler[]> byType = group.size() == 1 ? singleRules : pairedRules;
+        Handler[] applicable = byType.get(type);
+        if (applicable == null) {
+            if (rules == null) {
+                List<Handler> chain = new ArrayList<>();
+                for (Handler h = constructHandlerChain(); h != null; h = h.getNext()) {
+                    chain.add(h);
+                }
+                rules = chain.toArray(new Handler[0]);
+            }
+            List<Handler> l = new ArrayList<>();
+            for (Handler h : rules) {
+                if (h.isApplicable(type, group.size())) {
+                    l.add(h);
+                }
+            }
+            applicable = l.toArray(new Handler[0]);
+            byType.put(type, applicable);
+        }
+        for (Handler h : applicable) {
+            h.processList(group, ch);
+        }
+    }
+
+    private Handler[] createRules() {
+        return new Handler[]{
                 new Rule1_1(), new Rule1_2(), new Rule1_3(), new Rule2_1(),
                 new Rule2_2(), new Rule2_3(), new Rule2_4(), new Rule2_5(),
                 new Rule2_7(), new Rule2_8(), new Rule3_1(), new Rule3_3(), new Rule3_4(),
@@ -72,19 +120,55 @@ public class BCProcessor extends HumanErrorFormatter {
                 new Rule5_4(), new Rule5_6(), new Rule5_12(), new Rule5_14(),
                 new Terminator()
         };
+    }
 
-        // link them
-        for (int i = 0; i < handlers.length - 1; i++) {
-            handlers[i].setNext(handlers[i + 1]);
+    /**
+     * Class properties checked by several rules
+     */
+    private static class ClassFacts {
+
+        final boolean subclassable;
+        final boolean isFinal;
+        // a class which is neither final nor an interface
+        final boolean extensibleClass;
+
+        ClassFacts(ClassDescription cd) {
+            subclassable = SwissKnife.canBeSubclassed(cd);
+            isFinal = cd.hasModifier(Modifier.FINAL);
+            extensibleClass = cd.isClass() && !cd.isFinal() && !cd.isInterface();
         }
+    }
 
-        return handlers[0];
+    /**
+     * Returns facts about the class or null if the class is not found
+     */
+    private ClassFacts getFacts(String className, ClassHierarchy h) {
+        Map<String, ClassFacts> facts = h == sfHier ? sfFacts : clFacts;
+        if (facts.containsKey(className)) {
+            return facts.get(className);
+        }
+        ClassFacts f = null;
+        try {
+            f = new ClassFacts(h.load(className));
+        } catch (ClassNotFoundException e) {
+            // stays null
+        }
+        facts.put(className, f);
+        return f;
+    }
+
+    private boolean isSubclassable(String className, ClassHierarchy h) {
+        ClassFacts f = getFacts(className, h);
+        return f != null && f.subclassable;
     }
 
-    protected void outProcessedErrors() {
+    protected void outProcessedErrors(Iterator<Message> messages) {
         String cl = "";
+        boolean printed = false;
 
-        for (Message current : failedMessages) {
+        while (messages.hasNext()) {
+            Message current = messages.next();
+            printed = true;
             if (current == null) {
                 continue;
             }
@@ -102,7 +186,7 @@ public class BCProcessor extends HumanErrorFormatter {
             }
             out.println("  " + prefix + current.definition + " : " + current.errorObject);
         }
-        if (!failedMessages.isEmpty()) {
+        if (printed) {
             out.println("");
         }
     }
@@ -120,6 +204,10 @@ public class BCProcessor extends HumanErrorFormatter {
         private Message m;
         private final Handler r5 = new Rule5_2_3();
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && (type == MessageType.ADD_CLASSES || type == MessageType.ADD_METHS);
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1) {
@@ -183,6 +271,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && (type == MessageType.MISS_CLASSES || type == MessageType.MISS_FIELDS || type == MessageType.MISS_METHS);
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1) {
@@ -196,7 +288,7 @@ public class BCProcessor extends HumanErrorFormatter {
                     || (m.messageType == MessageType.MISS_METHS);
 
             if (retval && m.errorObject.isProtected()) {
-                if (!canBeSubclassed(m.className, sfHier)) {
+                if (!isSubclassable(m.className, sfHier)) {
                     retval = false;
                 }
             }
@@ -247,6 +339,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_METHS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1) {
@@ -260,7 +356,7 @@ public class BCProcessor extends HumanErrorFormatter {
                     if (!isDefender(md, m.className)) {
                         String dcn = md.getDeclaringClassName();
                         if (!extensibleInterfaces && clHier.isInterface(dcn) && !clHier.isAnnotation(dcn)) {
-                            if (!clHier.isInterface(m.className) && !canBeSubclassed(m.className, clHier)) {
+                            if (!clHier.isInterface(m.className) && !isSubclassable(m.className, clHier)) {
                                 return false;
                             }
 
@@ -291,20 +387,21 @@ public class BCProcessor extends HumanErrorFormatter {
     }
 
     private void initObject() throws ClassNotFoundException {
-        if (objectClass == null) {
-            objectClass = clHier.load("java.lang.Object");
+        if (objectMethods == null) {
+            Set<String> signatures = new HashSet<>();
+            for (MethodDescr mdo : clHier.load("java.lang.Object").getDeclaredMethods()) {
+                if (!mdo.isPrivate()) {
+                    signatures.add(mdo.getSignature());
+                }
+            }
+            objectMethods = signatures;
         }
     }
 
     private boolean fromObject(MethodDescr md) throws ClassNotFoundException {
         if (md.isAbstract()) {
             initObject();
-            MethodDescr[] objectMethods = objectClass.getDeclaredMethods();
-            for (MethodDescr mdo : objectMethods) {
-                if (!mdo.isPrivate() && md.getSignature().equals(mdo.getSignature())) {
-                    return true;
-                }
-            }
+            return objectMethods.contains(md.getSignature());
         }
         return false;
     }
@@ -322,6 +419,10 @@ public class BCProcessor extends HumanErrorFormatter {
             setLevel(Level.WARNING);
         }
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_FLD;
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1) {
@@ -359,6 +460,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_FLD;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
@@ -399,6 +504,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.MISS_SUPERCLASSES;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
@@ -419,6 +528,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_METHS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1 || bin) {
@@ -453,6 +566,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.MISS_METHS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
 
             if (l.size() != 1) {
@@ -555,7 +672,7 @@ public class BCProcessor extends HumanErrorFormatter {
 
         protected boolean proc() {
             boolean problem = meth1.isProtected() && meth2.isPublic() && !meth1.isFinal();
-            if (problem && !bin && canBeSubclassed(me1.className, sfHier)) {
+            if (problem && !bin && isSubclassable(me1.className, sfHier)) {
                 newM.definition = i18n.getString("BCProcessor.error.3_6"); //"W3.6 - Increase access, from protected to public if the class is subclassable";
                 setMessageLevel(newM);
                 return true;
@@ -568,7 +685,7 @@ public class BCProcessor extends HumanErrorFormatter {
 
         protected boolean proc() {
             if (!meth1.isAbstract() && meth2.isAbstract()) {
-                if (canBeSubclassed(me1.className, sfHier)) {
+                if (isSubclassable(me1.className, sfHier)) {
                     newM.definition = i18n.getString("BCProcessor.error.3_8"); //"E3.8 - Changing method from non-abstract to abstract";
                     setMessageLevel(newM);
                     return true;
@@ -582,7 +699,7 @@ public class BCProcessor extends HumanErrorFormatter {
 
         protected boolean proc() {
             if (!meth1.isFinal() && meth2.isFinal()) {
-                if (canBeSubclassed(me1.className, sfHier)) {
+                if (isSubclassable(me1.className, sfHier)) {
                     newM.definition = i18n.getString("BCProcessor.error.3_10"); //"E3.10 - Changing method from non-final to final";
                     setMessageLevel(newM);
                     return true;
@@ -738,6 +855,10 @@ public class BCProcessor extends HumanErrorFormatter {
             setLevel(Level.WARNING);
         }
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_METHS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
@@ -755,22 +876,22 @@ public class BCProcessor extends HumanErrorFormatter {
         }
 
         protected void writeMessage(List<Message> l, Chain ch) {
-            try {
-                ClassDescription cd = clHier.load(m.className);
-                MethodDescr md = (MethodDescr) m.errorObject;
-                if (!md.isStatic() && !md.isAbstract()) {
-                    if (cd.hasModifier(Modifier.FINAL)) {
-                        return;
-                    }
-                    if (bin) {
-                        return;
-                    }
-                    m.definition = i18n.getString("BCProcessor.error.5_1_2"); // "W5.1.2 - Adding methods";
-                    ch.addMessage(m);
-                    setMessageLevel(m);
+            ClassFacts cf = getFacts(m.className, clHier);
+            if (cf == null) {
+                SwissKnife.reportThrowable(new ClassNotFoundException(m.className));
+                return;
+            }
+            MethodDescr md = (MethodDescr) m.errorObject;
+            if (!md.isStatic() && !md.isAbstract()) {
+                if (cf.isFinal) {
+                    return;
+                }
+                if (bin) {
+                    return;
                 }
-            } catch (ClassNotFoundException e) {
-                SwissKnife.reportThrowable(e);
+                m.definition = i18n.getString("BCProcessor.error.5_1_2"); // "W5.1.2 - Adding methods";
+                ch.addMessage(m);
+                setMessageLevel(m);
             }
         }
     }
@@ -779,6 +900,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_METHS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
@@ -796,27 +921,26 @@ public class BCProcessor extends HumanErrorFormatter {
         }
 
         protected void writeMessage(List<Message> l, Chain ch) {
-            try {
-                ClassDescription cd = clHier.load(m.className);
-                MethodDescr md = (MethodDescr) m.errorObject;
-
-                if (canBeSubclassed(m.className, sfHier)) {
-                    if (md.isAbstract()) {
-                        m.definition = i18n.getString("BCProcessor.error.5_2"); //"E5.2 - Adding abstract methods";
-                        ch.addMessage(m);
-                        setMessageLevel(m);
-                        return;
-                    }
+            ClassFacts cf = getFacts(m.className, clHier);
+            if (cf == null) {
+                SwissKnife.reportThrowable(new ClassNotFoundException(m.className));
+                return;
+            }
+            MethodDescr md = (MethodDescr) m.errorObject;
 
-                    if (md.isStatic() && !cd.hasModifier(Modifier.FINAL) && !bin) {
-                        m.definition = i18n.getString("BCProcessor.error.5_3"); // "E5.3 - Adding static methods";
-                        ch.addMessage(m);
-                        setMessageLevel(m);
-                    }
+            if (isSubclassable(m.className, sfHier)) {
+                if (md.isAbstract()) {
+                    m.definition = i18n.getString("BCProcessor.error.5_2"); //"E5.2 - Adding abstract methods";
+                    ch.addMessage(m);
+                    setMessageLevel(m);
+                    return;
                 }
 
-            } catch (ClassNotFoundException e) {
-                SwissKnife.reportThrowable(e);
+                if (md.isStatic() && !cf.isFinal && !bin) {
+                    m.definition = i18n.getString("BCProcessor.error.5_3"); // "E5.3 - Adding static methods";
+                    ch.addMessage(m);
+                    setMessageLevel(m);
+                }
             }
         }
     }
@@ -829,6 +953,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.MISS_CONSTRUCTORS;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
@@ -856,19 +984,18 @@ public class BCProcessor extends HumanErrorFormatter {
 
         private ErrorFormatter.Message m;
 
+        boolean isApplicable(MessageType type, int size) {
+            return size == 1 && type == MessageType.ADD_FLD;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             if (l.size() != 1) {
                 return false;
             }
             m = l.get(0);
             if (m.messageType == MessageType.ADD_FLD) {
-                try {
-                    ClassDescription cd = clHier.load(m.className);
-                    if (cd.isClass() && !cd.isFinal() && !cd.isInterface()) {
-                        return true;
-                    }
-                } catch (ClassNotFoundException e) {
-                }
+                ClassFacts cf = getFacts(m.className, clHier);
+                return cf != null && cf.extensibleClass;
             }
             return false;
         }
@@ -885,7 +1012,7 @@ public class BCProcessor extends HumanErrorFormatter {
         protected boolean proc() {
             // TODO - recheck enum can't be subclassed in jdk7
             if (!c1.isAbstract() && !c1.hasModifier(Modifier.ENUM) && c2.isAbstract()) {
-                if (canBeSubclassed(c1.getQualifiedName(), sfHier)) {
+                if (isSubclassable(c1.getQualifiedName(), sfHier)) {
                     newM.definition = i18n.getString("BCProcessor.error.5_12"); // "E5.12 - Changing class from non-abstract to abstract";
                     setMessageLevel(newM);
                     return true;
@@ -909,6 +1036,10 @@ public class BCProcessor extends HumanErrorFormatter {
 
     static class Terminator extends Handler {
 
+        boolean isApplicable(MessageType type, int size) {
+            return true;
+        }
+
         boolean acceptMessageList(List<Message> l) {
             return true;
         }
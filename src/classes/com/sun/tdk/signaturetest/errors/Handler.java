@@ -49,15 +49,35 @@ public abstract class Handler {
         return this;
     }
 
+    Handler getNext() {
+        return next;
+    }
+
     void process(List<Message> l, Chain ch) {
-        if (acceptMessageList(l)) {
-            writeMessage(l, ch);
-        }
+        processList(l, ch);
         if (next != null) {
             next.process(l, ch);
         }
     }
 
+    /**
+     * Processes the list by this handler only
+     */
+    void processList(List<Message> l, Chain ch) {
+        if (acceptMessageList(l)) {
+            writeMessage(l, ch);
+        }
+    }
+
+    /**
+     * Returns false if the handler rejects any list of the given size which
+     * starts with a message of the given type. Lets the caller skip
+     * handlers which would not accept the list anyway.
+     */
+    boolean isApplicable(MessageType type, int size) {
+        return size >= 2;
+    }
+
 
     /*
      *  First filtering method. By default we don't process added/missed annotation
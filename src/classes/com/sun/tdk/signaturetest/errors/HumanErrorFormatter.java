@@ -33,12 +33,17 @@ import com.sun.tdk.signaturetest.plugin.MessageTransformer;
 import com.sun.tdk.signaturetest.plugin.PluginAPI;
 import com.sun.tdk.signaturetest.util.I18NResourceBundle;
 
+import com.sun.tdk.signaturetest.util.SwissKnife;
+
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 public class HumanErrorFormatter extends SortedErrorFormatter {
 
@@ -60,69 +65,171 @@ public class HumanErrorFormatter extends SortedErrorFormatter {
             failedMessages = t.changeMessageList(failedMessages);
         }
 
-        sortErrors();
+        printProcessedErrors();
 
-        ErrorComparator ec = new ErrorComparator();
+    }
 
-        int length = failedMessages.size();
-        Chain ch = new Chain(failedMessages);
+    /**
+     * Messages keep copies of error objects, so the handlers see the elements
+     * as they were when reported whether the messages were written to
+     * temporary files or not
+     */
+    protected Message createError(MessageType kind, String className, MemberType type, String def, String tail, MemberDescription errorObject) {
+        MemberDescription copy = errorObject == null ? null : (MemberDescription) errorObject.clone();
+        return super.createError(kind, className, type, def, tail, copy);
+    }
 
-        for (int i = 0; i < length; i++) {
-            Message e1 = failedMessages.get(i);
-            if (e1 == null) {
-                continue;
-            }
+    /**
+     * Handlers need error objects of messages
+     */
+    boolean isErrorObjectSpilled() {
+        return true;
+    }
 
-            int j = i;
+    Comparator<Message> getSpillOrder() {
+        return GROUP_ORDER;
+    }
 
-            while (j + 1 < failedMessages.size()) {
-                Message e2 = failedMessages.get(j + 1);
-                if (ec.compare(e1, e2) == 0) {
-                    j++;
-                } else {
-                    break;
-                }
+    /**
+     * Processes and prints messages written to temporary files and the ones
+     * left in {@code failedMessages}. The first pass passes groups of
+     * messages about the same element to the handlers, the second one
+     * suppresses similar messages about inherited elements and the third one
+     * prints the rest counting them. Results of a pass are written to
+     * temporary files if they don't fit in memory.
+     */
+    private void printProcessedErrors() {
+        SpilledMessages spilled = getSpilledMessages();
+        boolean summary = spilled != null;
+        if (spilled == null) {
+            spilled = new SpilledMessages(true);
+        }
+        SpilledMessages processed = new SpilledMessages(true);
+        SpilledMessages suppressed = new SpilledMessages(true);
+        List<Message> buffer = new ArrayList<>();
+        final Map<MessageType, Integer> counts = new TreeMap<>();
+
+        try {
+            try (SpilledMessages.Merger m = spilled.merge(failedMessages, GROUP_ORDER)) {
+                failedMessages.clear();
+                // messages about elements with the same qualified name
+                List<Message> element = new ArrayList<>();
+                Chain ch = new Chain(element);
+                int start = 0;
+                Message msg;
+                do {
+                    msg = m.next();
+                    if (start < element.size() && (msg == null || GROUP_ORDER.compare(element.get(start), msg) != 0)) {
+                        processGroup(element.subList(start, element.size()), ch);
+                        start = element.size();
+                    }
+                    if (!element.isEmpty() && (msg == null
+                            || !element.get(0).errorObject.getQualifiedName().equals(msg.errorObject.getQualifiedName()))) {
+                        ch.finishProcessing();
+                        buffer.addAll(element);
+                        element.clear();
+                        start = 0;
+                        if (buffer.size() >= SPILL_THRESHOLD) {
+                            processed.addRun(buffer, KIND_ORDER);
+                            buffer.clear();
+                        }
+                    }
+                    if (msg != null) {
+                        element.add(msg);
+                    }
+                } while (msg != null);
+            } finally {
+                spilled.delete();
             }
 
-            List<Message> currentGroup = failedMessages.subList(i, j + 1);
-
-            Handler h = constructHandlerChain();
-
-            h.process(currentGroup, ch);
-
-            i = j;
+            try (SpilledMessages.Merger m = processed.merge(buffer, KIND_ORDER)) {
+                buffer = new ArrayList<>();
+                List<Message> group = new ArrayList<>();
+                Message msg;
+                do {
+                    msg = m.next();
+                    if (!group.isEmpty() && (msg == null || !isSameKind(group.get(0), msg))) {
+                        supressExtraErrors(group);
+                        buffer.addAll(group);
+                        group.clear();
+                        if (buffer.size() >= SPILL_THRESHOLD) {
+                            suppressed.addRun(buffer, OUTPUT_ORDER);
+                            buffer.clear();
+                        }
+                    }
+                    if (msg != null) {
+                        group.add(msg);
+                    }
+                } while (msg != null);
+            } finally {
+                processed.delete();
+            }
 
-        }
+            numErrors = 0;
+            numWarnings = 0;
+            try (final SpilledMessages.Merger m = suppressed.merge(buffer, OUTPUT_ORDER)) {
+                buffer.clear();
+                outProcessedErrors(new Iterator<Message>() {
+                    private Message next = read();
 
-        ch.finishProcessing();
+                    public boolean hasNext() {
+                        return next != null;
+                    }
 
-        supressExtraErrors();
+                    public Message next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Message current = next;
+                        next = read();
+                        if (level.intValue() <= current.getLevel().intValue()) {
+                            numErrors++;
+                        } else {
+                            numWarnings++;
+                        }
+                        count(counts, current);
+                        return current;
+                    }
 
-        Iterator<Message> it = failedMessages.iterator();
-        numErrors = 0;
-        numWarnings = 0;
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
 
-        while (it.hasNext()) {
-            Message m = it.next();
-            if (level.intValue() <= m.getLevel().intValue()) {
-                numErrors++;
-            } else {
-                numWarnings++;
+                    private Message read() {
+                        try {
+                            return m.next();
+                        } catch (IOException e) {
+                            throw new ReadError(e);
+                        }
+                    }
+                });
+            } catch (ReadError e) {
+                throw e.exception;
             }
+        } catch (IOException e) {
+            SwissKnife.reportThrowable(e);
+        } finally {
+            suppressed.delete();
         }
 
-        sortErrorsForOutput();
-
-        outProcessedErrors();
-
+        if (summary) {
+            printSummary(counts);
+        }
     }
 
-    protected void outProcessedErrors() {
+    /**
+     * Prints messages sorted for output
+     */
+    protected void outProcessedErrors(Iterator<Message> messages) {
         boolean hasHeader = false;
         MessageType lastType = null;
         String cl = "";
 
-        for (Message current : failedMessages) {
+        boolean printed = false;
+
+        while (messages.hasNext()) {
+            Message current = messages.next();
+            printed = true;
             if (current == null) {
                 continue;
             }
@@ -184,11 +291,19 @@ public class HumanErrorFormatter extends SortedErrorFormatter {
                 out.println(current);
             }
         }
-        if (!failedMessages.isEmpty()) {
+        if (printed) {
             out.println("");
         }
     }
 
+    /**
+     * Passes the group of messages about the same element to the handlers
+     */
+    protected void processGroup(List<Message> group, Chain ch) {
+        Handler h = constructHandlerChain();
+        h.process(group, ch);
+    }
+
     protected Handler constructHandlerChain() {
         //AnnotationHandler must be last but one
         //Other *Handler may be in any order
@@ -200,107 +315,68 @@ public class HumanErrorFormatter extends SortedErrorFormatter {
                                                 new AnnotationHandler())))));
     }
 
-    private void sortErrorsForOutput() {
-        Collections.sort(failedMessages, new Comparator<Message>() {
-            // 1 - By class
-            // 2 - By object (CLSS, method, field, other)
-            // 3 - By message type
-            // 4 - By definition
-            @Override
-            public int compare(Message m1, Message m2) {
-                if (m1 == null && m2 == null) {
-                    return 0;
-                }
-                if (m1 == null) {
-                    return -1;
-                }
-                if (m2 == null) {
-                    return 1;
-                }
+    private static final Comparator<Message> OUTPUT_ORDER = new Comparator<Message>() {
+        // 1 - By class
+        // 2 - By object (CLSS, method, field, other)
+        // 3 - By message type
+        // 4 - By definition
+        @Override
+        public int compare(Message m1, Message m2) {
+            if (m1 == null && m2 == null) {
+                return 0;
+            }
+            if (m1 == null) {
+                return -1;
+            }
+            if (m2 == null) {
+                return 1;
+            }
 
-                int comp = m1.className.compareTo(m2.className);
+            int comp = m1.className.compareTo(m2.className);
 
+            if (comp == 0) {
+                comp = m1.errorObject.getMemberType().compareTo(m2.errorObject.getMemberType());
                 if (comp == 0) {
-                    comp = m1.errorObject.getMemberType().compareTo(m2.errorObject.getMemberType());
+                    comp = m1.messageType.compareTo(m2.messageType);
                     if (comp == 0) {
-                        comp = m1.messageType.compareTo(m2.messageType);
+                        comp = m1.definition.compareTo(m2.definition);
                         if (comp == 0) {
-                            comp = m1.definition.compareTo(m2.definition);
-                            if (comp == 0) {
-                                if (m1.tail != null && m2.tail != null) {
-                                    comp = m1.tail.compareTo(m2.tail);
+                            if (m1.tail != null && m2.tail != null) {
+                                comp = m1.tail.compareTo(m2.tail);
+                            } else {
+                                if (m1.tail == null) {
+                                    comp = -1;
                                 } else {
-                                    if (m1.tail == null) {
-                                        comp = -1;
-                                    } else {
-                                        comp = 1;
-                                    }
+                                    comp = 1;
                                 }
                             }
                         }
-                        return comp;
                     }
+                    return comp;
                 }
-                return comp;
             }
-        });
-    }
-
-    protected void sortErrors() {
-        Collections.sort(failedMessages, new ErrorComparator());
-    }
+            return comp;
+        }
+    };
 
     // Issue 39 - Suppress similar messages in human-readable formatter
-    private void supressExtraErrors() {
-        Collections.sort(failedMessages, new Comparator<Message>() {
-            @Override
-            public int compare(Message m1, Message m2) {
-                if (!isSameKind(m1, m2)) {
-                    return -1;  //bad practice, but...
-                }
-                return m1.className.compareTo(m2.className);
-            }
-        });
-
-        List<Message> toRemove = new ArrayList<>();
-
-        loop:
-        for (int i = 0; i < failedMessages.size(); i++) {
-            Message m1 = failedMessages.get(i);
-            int last = i;
-            for (int j = i + 1; j < failedMessages.size(); j++) {
-                Message m2 = failedMessages.get(j);
-                if (!isSameKind(m1, m2)) {
-                    if (last == i) {
-                        i = j;
-                        continue loop;
-                    } else {
-                        break;
+    /**
+     * Removes messages about inherited elements from the group of similar
+     * messages if there is a message about the declared element
+     */
+    private static void supressExtraErrors(List<Message> group) {
+        for (Message m : group) {
+            if (m.className.equals(m.errorObject.getDeclaringClassName())) {
+                Iterator<Message> it = group.iterator();
+                while (it.hasNext()) {
+                    Message r = it.next();
+                    if (!r.className.equals(r.errorObject.getDeclaringClassName())) {
+                        it.remove();
                     }
-                } else {
-                    last = j;
-                }
-            }
-            boolean found = false;
-            List<Message> rem = new ArrayList<>();
-            for (int k = i; k <= last; k++) {
-                Message m = failedMessages.get(k);
-                if (m.className.equals(m.errorObject.getDeclaringClassName())) {
-                    found = true;
-                } else {
-                    rem.add(m);
                 }
+                return;
             }
-
-            if (found) {
-                toRemove.addAll(rem);
-            }
-
-            i = last;
         }
-
-        failedMessages.removeAll(toRemove);
-
     }
 
     private static boolean isSameKind(Message m1, Message m2) {
@@ -313,6 +389,63 @@ public class HumanErrorFormatter extends SortedErrorFormatter {
                 && m1.messageType.equals(m2.messageType);
     }
 
+    /**
+     * Order which puts similar messages together, see
+     * {@link #isSameKind(Message, Message)}. Error objects are ordered by the
+     * properties their {@code equals()} methods compare.
+     */
+    private static final Comparator<Message> KIND_ORDER = new Comparator<Message>() {
+        @Override
+        public int compare(Message m1, Message m2) {
+            MemberDescription md1 = m1.errorObject;
+            MemberDescription md2 = m2.errorObject;
+            int comp = m1.messageType.compareTo(m2.messageType);
+            if (comp == 0) {
+                comp = m1.definition.compareTo(m2.definition);
+            }
+            if (comp == 0) {
+                comp = m1.tail.compareTo(m2.tail);
+            }
+            if (comp == 0) {
+                comp = md1.getMemberType().compareTo(md2.getMemberType());
+            }
+            if (comp == 0) {
+                comp = md1.getName().compareTo(md2.getName());
+            }
+            if (comp == 0 && (md1.getMemberType() == MemberType.METHOD || md1.getMemberType() == MemberType.CONSTRUCTOR)) {
+                comp = compareNullable(md1.getArgs(), md2.getArgs());
+                if (comp == 0) {
+                    comp = compareNullable(md1.getTypeParameters(), md2.getTypeParameters());
+                }
+            }
+            return comp;
+        }
+    };
+
+    private static int compareNullable(String s1, String s2) {
+        if (s1 == null || s2 == null) {
+            return s1 == null ? (s2 == null ? 0 : -1) : 1;
+        }
+        return s1.compareTo(s2);
+    }
+
+    /**
+     * Failure to read messages back from temporary files while they are
+     * printed
+     */
+    private static class ReadError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+        final IOException exception;
+
+        ReadError(IOException e) {
+            super(e);
+            exception = e;
+        }
+    }
+
+    private static final Comparator<Message> GROUP_ORDER = new ErrorComparator();
+
     private static class ErrorComparator implements Comparator<Message> {
 
         @Override
@@ -30,7 +30,9 @@ import com.sun.tdk.signaturetest.model.MemberType;
 import com.sun.tdk.signaturetest.plugin.MessageTransformer;
 import com.sun.tdk.signaturetest.plugin.PluginAPI;
 import com.sun.tdk.signaturetest.util.I18NResourceBundle;
+import com.sun.tdk.signaturetest.util.SwissKnife;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 
@@ -59,6 +61,16 @@ public class SortedErrorFormatter extends ErrorFormatter {
      * Tabulator position.
      */
     protected static final int tabSize = 20;
+    /**
+     * Number of buffered messages written to a temporary file at once.
+     */
+    static final int SPILL_THRESHOLD = 100000;
+    /**
+     * Messages written to temporary files, null if all messages are kept in
+     * {@code failedMessages}.
+     */
+    private SpilledMessages spilled;
+    private boolean spillFailed = false;
 
     /**
      * Assign the given <b>PrintWriter</b> to print error messages.
@@ -97,6 +109,53 @@ public class SortedErrorFormatter extends ErrorFormatter {
         if (!kind.isWarning()) {
             numErrors++;
         }
+        if (failedMessages.size() >= SPILL_THRESHOLD && !spillFailed && isSpillable()) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns true if buffered messages can be written to temporary files
+     */
+    protected boolean isSpillable() {
+        // message transformers work with the list of all messages
+        return PluginAPI.BEFORE_MESSAGE_SORT.getMessageTransformer() == null;
+    }
+
+    /**
+     * Returns true if error objects of messages must be written to temporary
+     * files too, messages read back have no error objects otherwise
+     */
+    boolean isErrorObjectSpilled() {
+        return false;
+    }
+
+    /**
+     * Returns the order of messages in temporary files
+     */
+    Comparator<Message> getSpillOrder() {
+        return DUPLICATES_ORDER;
+    }
+
+    /**
+     * Returns messages written to temporary files or null
+     */
+    SpilledMessages getSpilledMessages() {
+        return spilled;
+    }
+
+    private void spill() {
+        try {
+            if (spilled == null) {
+                spilled = new SpilledMessages(isErrorObjectSpilled());
+            }
+            spilled.addRun(failedMessages, getSpillOrder());
+            failedMessages.clear();
+        } catch (IOException e) {
+            // keep the rest of messages in memory
+            SwissKnife.reportThrowable(e);
+            spillFailed = true;
+        }
     }
 
     /**
@@ -104,6 +163,11 @@ public class SortedErrorFormatter extends ErrorFormatter {
      */
     public void printErrors() {
 
+        if (spilled != null) {
+            printSpilledErrors();
+            return;
+        }
+
         int exmsgs = msgExclude(getTestedsuper());
         String nl = System.getProperty("line.separator");
 
@@ -114,8 +178,6 @@ public class SortedErrorFormatter extends ErrorFormatter {
 
         sortErrors();
 
-        boolean hasHeader = false;
-        int length = failedMessages.size();
         MessageType lastType = null;
         numErrors = 0;
         for (Message current : failedMessages) {
@@ -123,73 +185,189 @@ public class SortedErrorFormatter extends ErrorFormatter {
             if (!current.messageType.isWarning()) {
                 numErrors++;
             }
-            if (current.messageType != lastType) {
-                hasHeader = true;
-                out.println(nl + current.messageType.getLocMessage() + nl
-                        + space('-', current.messageType.getLocMessage().length()) + nl);
-                lastType = current.messageType;
-            }
-            if (hasHeader) {
-                if (current.definition.isEmpty()) {
-                    out.println(current.className);
-                } else {
-                    int currentTab = (current.className.length() + 1) / tabSize;
-                    if ((current.className.length() + 1) % tabSize != 0) {
-                        currentTab++;
+            lastType = printMessage(current, lastType, nl);
+        }
+        if (!failedMessages.isEmpty()) {
+            out.println("");
+        }
+
+        if (exmsgs > 0) {
+            out.println(i18n.getString("SortedErrorFormatter.error.dupmesg", Integer.toString(exmsgs)));
+        }
+    }
+
+    /**
+     * Prints messages written to temporary files and the ones left in
+     * {@code failedMessages}. Duplicated messages are excluded on the first
+     * pass over the messages merged by type and definition, the rest are
+     * written to new temporary files sorted for output and printed on the
+     * second pass.
+     */
+    private void printSpilledErrors() {
+        String nl = System.getProperty("line.separator");
+        int exmsgs = 0;
+        SpilledMessages sorted = new SpilledMessages(false);
+        List<Message> buffer = new ArrayList<>();
+        Map<MessageType, Integer> counts = new TreeMap<>();
+
+        try {
+            try (SpilledMessages.Merger m = spilled.merge(failedMessages, DUPLICATES_ORDER)) {
+                failedMessages.clear();
+                List<Message> group = new ArrayList<>();
+                Set<Message> exclude = new HashSet<>();
+                Message msg;
+                do {
+                    msg = m.next();
+                    if (!group.isEmpty() && (msg == null || !msgCompare(group.get(0), msg))) {
+                        if (group.size() > 1) {
+                            exmsgs += excludeDuplicates(group, getTestedsuper(), exclude);
+                        }
+                        for (Message g : group) {
+                            if (!exclude.contains(g)) {
+                                buffer.add(g);
+                            }
+                        }
+                        if (buffer.size() >= SPILL_THRESHOLD) {
+                            sorted.addRun(buffer, OUTPUT_ORDER);
+                            buffer.clear();
+                        }
+                        group.clear();
+                        exclude.clear();
                     }
-                    currentTab *= tabSize;
-                    out.println(current.className + ":"
-                            + space(' ', currentTab - current.className.length() - 1)
-                            + current.definition);
-                    if (isVerbose() && !current.tail.isEmpty()) {
-                        out.println(i18n.getString("SortedErrorFormatter.error.affected", current.tail));
+                    if (msg != null) {
+                        group.add(msg);
                     }
+                } while (msg != null);
+            } finally {
+                spilled.delete();
+            }
+
+            boolean printed = false;
+            MessageType lastType = null;
+            numErrors = 0;
+            try (SpilledMessages.Merger m = sorted.merge(buffer, OUTPUT_ORDER)) {
+                buffer.clear();
+                Message current;
+                while ((current = m.next()) != null) {
+                    if (!current.messageType.isWarning()) {
+                        numErrors++;
+                    }
+                    count(counts, current);
+                    lastType = printMessage(current, lastType, nl);
+                    printed = true;
                 }
-            } else {
-                out.println(current);
             }
-        }
-        if (!failedMessages.isEmpty()) {
-            out.println("");
+            if (printed) {
+                out.println("");
+            }
+        } catch (IOException e) {
+            SwissKnife.reportThrowable(e);
+        } finally {
+            sorted.delete();
         }
 
         if (exmsgs > 0) {
             out.println(i18n.getString("SortedErrorFormatter.error.dupmesg", Integer.toString(exmsgs)));
         }
+        printSummary(counts);
+    }
+
+    static void count(Map<MessageType, Integer> counts, Message m) {
+        Integer n = counts.get(m.messageType);
+        counts.put(m.messageType, n == null ? 1 : n + 1);
+    }
+
+    /**
+     * Prints numbers of the printed messages by type. Reports which didn't
+     * fit in memory are too long to count messages by looking at them.
+     */
+    void printSummary(Map<MessageType, Integer> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        out.println(i18n.getString("SortedErrorFormatter.summary"));
+        for (Map.Entry<MessageType, Integer> e : counts.entrySet()) {
+            out.println("  " + e.getKey().getLocMessage() + ": " + e.getValue());
+        }
+    }
+
+    /**
+     * Prints the message and the header of its group if the message type
+     * differs from the type of the previous message. Returns the message
+     * type.
+     */
+    private MessageType printMessage(Message current, MessageType lastType, String nl) {
+        if (current.messageType != lastType) {
+            out.println(nl + current.messageType.getLocMessage() + nl
+                    + space('-', current.messageType.getLocMessage().length()) + nl);
+        }
+        if (current.definition.isEmpty()) {
+            out.println(current.className);
+        } else {
+            int currentTab = (current.className.length() + 1) / tabSize;
+            if ((current.className.length() + 1) % tabSize != 0) {
+                currentTab++;
+            }
+            currentTab *= tabSize;
+            out.println(current.className + ":"
+                    + space(' ', currentTab - current.className.length() - 1)
+                    + current.definition);
+            if (isVerbose() && !current.tail.isEmpty()) {
+                out.println(i18n.getString("SortedErrorFormatter.error.affected", current.tail));
+            }
+        }
+        return current.messageType;
     }
 
     protected void sortErrors() {
-        Collections.sort(failedMessages, new Comparator<Message>() {
-            @Override
-            public int compare(Message m1, Message m2) {
-                // Full Messages compare. Note that Message.compareTo does not do it!
-                // Full compare required to guarantee identical output from one execution to another
-                // in different modes
+        Collections.sort(failedMessages, OUTPUT_ORDER);
+    }
+
+    /**
+     * Order of printed messages
+     */
+    private static final Comparator<Message> OUTPUT_ORDER = new Comparator<Message>() {
+        @Override
+        public int compare(Message m1, Message m2) {
+            // Full Messages compare. Note that Message.compareTo does not do it!
+            // Full compare required to guarantee identical output from one execution to another
+            // in different modes
 
-                int comp = m1.messageType.compareTo(m2.messageType);
+            int comp = m1.messageType.compareTo(m2.messageType);
 
+            if (comp == 0) {
+                comp = m1.className.compareTo(m2.className);
                 if (comp == 0) {
-                    comp = m1.className.compareTo(m2.className);
+                    comp = m1.definition.compareTo(m2.definition);
                     if (comp == 0) {
-                        comp = m1.definition.compareTo(m2.definition);
-                        if (comp == 0) {
-                            if (m1.tail != null && m2.tail != null) {
-                                comp = m1.tail.compareTo(m2.tail);
+                        if (m1.tail != null && m2.tail != null) {
+                            comp = m1.tail.compareTo(m2.tail);
+                        } else {
+                            if (m1.tail == null) {
+                                comp = -1;
                             } else {
-                                if (m1.tail == null) {
-                                    comp = -1;
-                                } else {
-                                    comp = 1;
-                                }
+                                comp = 1;
                             }
                         }
                     }
-                    return comp;
                 }
                 return comp;
             }
-        });
-    }
+            return comp;
+        }
+    };
+
+    /**
+     * Order which puts duplicated messages together, see
+     * {@link #msgCompare(Message, Message)}
+     */
+    private static final Comparator<Message> DUPLICATES_ORDER = new Comparator<Message>() {
+        @Override
+        public int compare(Message m1, Message m2) {
+            int comp = m1.messageType.compareTo(m2.messageType);
+            return comp != 0 ? comp : m1.definition.compareTo(m2.definition);
+        }
+    };
 
     /**
      * Return string consisting of {@code len} copies of the symbol
@@ -241,65 +419,77 @@ public class SortedErrorFormatter extends ErrorFormatter {
 
         List<Message> exclude = new ArrayList<>();
 
-        for (n = 0; n < vv.size(); n++) {
-            List<Message> v = vv.get(n);
-            //System.out.println("-Duplicate group-");
-
-            for (k = 0; k < v.size(); k++) {
-                rep:
-                for (boolean flag = true; flag; ) {
-                    flag = false;
-                    Message msgk = v.get(k);
-                    String supk = supernames.get(msgk.className);
-                    if (supk != null) {
-                        for (i = k + 1; i < v.size(); i++) {
-                            Message msgi = v.get(i);
-                            if (msgi.className.equals(supk)) {
-                                v.set(k, msgi);
-                                v.set(i, msgk);
-                                flag = true;
-                                //System.out.println("swap "+I+" "+k);
-                                continue rep;
-                            }
-                        }
-                    }
+        for (List<Message> v : vv) {
+            excludedMessages += excludeDuplicates(v, supernames, exclude);
+        }
+
+        for (i = failedMessages.size(); --i >= 0; ) {
+            Message msgi = failedMessages.get(i);
+
+            for (k = 0; k < exclude.size(); k++) {
+                Message msgk = exclude.get(k);
+                if (msgi == msgk) {
+                    //System.out.println(MsgShow(msgi)+"-removed");
+                    failedMessages.remove(i);
+                    break;
                 }
             }
+        }
+
+        return excludedMessages;
+    }
+
+    /**
+     * Excludes messages of subclasses from the group of duplicated messages
+     * and adds their class names to the tail of the superclass message.
+     * Returns the number of excluded messages.
+     */
+    private int excludeDuplicates(List<Message> v, Map<String, String> supernames, Collection<Message> exclude) {
+        int excludedMessages = 0;
+        int i, k;
+        //System.out.println("-Duplicate group-");
 
-            for (k = v.size(); --k >= 0; ) {
+        for (k = 0; k < v.size(); k++) {
+            rep:
+            for (boolean flag = true; flag; ) {
+                flag = false;
                 Message msgk = v.get(k);
-                //System.out.println(MsgShow(msgk));
                 String supk = supernames.get(msgk.className);
                 if (supk != null) {
-                    for (i = k; --i >= 0; ) {
+                    for (i = k + 1; i < v.size(); i++) {
                         Message msgi = v.get(i);
                         if (msgi.className.equals(supk)) {
-                            if (!msgi.tail.isEmpty()) {
-                                msgi.tail += ",";
-                            }
-                            msgi.tail += msgk.className;
-                            if (!msgk.tail.isEmpty()) {
-                                msgi.tail += "," + msgk.tail;
-                            }
-                            exclude.add(v.get(k));
-                            excludedMessages++;
-                            //System.out.println(MsgShow(msgk)+"-excluded");
-                            break;
+                            v.set(k, msgi);
+                            v.set(i, msgk);
+                            flag = true;
+                            //System.out.println("swap "+I+" "+k);
+                            continue rep;
                         }
                     }
                 }
             }
         }
 
-        for (i = failedMessages.size(); --i >= 0; ) {
-            Message msgi = failedMessages.get(i);
-
-            for (k = 0; k < exclude.size(); k++) {
-                Message msgk = exclude.get(k);
-                if (msgi == msgk) {
-                    //System.out.println(MsgShow(msgi)+"-removed");
-                    failedMessages.remove(i);
-                    break;
+        for (k = v.size(); --k >= 0; ) {
+            Message msgk = v.get(k);
+            //System.out.println(MsgShow(msgk));
+            String supk = supernames.get(msgk.className);
+            if (supk != null) {
+                for (i = k; --i >= 0; ) {
+                    Message msgi = v.get(i);
+                    if (msgi.className.equals(supk)) {
+                        if (!msgi.tail.isEmpty()) {
+                            msgi.tail += ",";
+                        }
+                        msgi.tail += msgk.className;
+                        if (!msgk.tail.isEmpty()) {
+                            msgi.tail += "," + msgk.tail;
+                        }
+                        exclude.add(v.get(k));
+                        excludedMessages++;
+                        //System.out.println(MsgShow(msgk)+"-excluded");
+                        break;
+                    }
                 }
             }
         }
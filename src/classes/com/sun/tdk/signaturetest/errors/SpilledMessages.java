@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.signaturetest.errors;
+
+import com.sun.tdk.signaturetest.errors.ErrorFormatter.Message;
+import com.sun.tdk.signaturetest.model.MemberDescription;
+import com.sun.tdk.signaturetest.util.Level;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Sorted runs of error messages kept in temporary files. Error objects are
+ * stored only if they are requested, otherwise the messages read back have
+ * only the fields printed by {@link SortedErrorFormatter}.
+ */
+class SpilledMessages {
+
+    private final boolean withErrorObjects;
+    private final List<MessageType> types = new ArrayList<>();
+    private final Map<MessageType, Integer> typeIds = new IdentityHashMap<>();
+    private final List<Level> levels = new ArrayList<>();
+    private final Map<Level, Integer> levelIds = new IdentityHashMap<>();
+    private final List<File> runs = new ArrayList<>();
+
+    SpilledMessages(boolean withErrorObjects) {
+        this.withErrorObjects = withErrorObjects;
+    }
+
+    /**
+     * Sorts the messages and writes them to a new temporary file. The sort
+     * is stable, so equal messages keep the order they were added in.
+     */
+    void addRun(List<Message> messages, Comparator<Message> order) throws IOException {
+        List<Message> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted, order);
+
+        File f = File.createTempFile("sigtest", ".err");
+        f.deleteOnExit();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            for (Message m : sorted) {
+                out.writeInt(getTypeId(m.messageType));
+                out.writeInt(getLevelId(m.getLevel()));
+                writeString(out, m.className);
+                writeString(out, m.definition);
+                writeString(out, m.tail);
+                if (withErrorObjects) {
+                    out.writeObject(m.errorObject);
+                    // don't keep written objects referenced by the stream
+                    out.reset();
+                }
+            }
+        } catch (IOException e) {
+            f.delete();
+            throw e;
+        }
+        runs.add(f);
+    }
+
+    boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+    /**
+     * Merges the runs and the given messages which weren't written. Of the
+     * equal messages the ones from earlier runs are returned first.
+     */
+    Merger merge(List<Message> messages, Comparator<Message> order) throws IOException {
+        List<Message> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted, order);
+        return new Merger(sorted, order);
+    }
+
+    /**
+     * Deletes the temporary files
+     */
+    void delete() {
+        for (File f : runs) {
+            f.delete();
+        }
+        runs.clear();
+    }
+
+    private int getTypeId(MessageType type) {
+        Integer id = typeIds.get(type);
+        if (id == null) {
+            id = types.size();
+            types.add(type);
+            typeIds.put(type, id);
+        }
+        return id;
+    }
+
+    private int getLevelId(Level level) {
+        Integer id = levelIds.get(level);
+        if (id == null) {
+            id = levels.size();
+            levels.add(level);
+            levelIds.put(level, id);
+        }
+        return id;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Source of sorted messages: a run file or the messages kept in memory
+     */
+    private class Source {
+
+        final int index;
+        private final ObjectInputStream in;
+        private final Iterator<Message> it;
+        Message current;
+
+        Source(int index, File f) throws IOException {
+            this.index = index;
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)));
+            it = null;
+        }
+
+        Source(int index, List<Message> messages) {
+            this.index = index;
+            in = null;
+            it = messages.iterator();
+        }
+
+        boolean advance() throws IOException {
+            if (it != null) {
+                current = it.hasNext() ? it.next() : null;
+            } else {
+                try {
+                    MessageType type = types.get(in.readInt());
+                    Level level = levels.get(in.readInt());
+                    String className = readString(in);
+                    String definition = readString(in);
+                    String tail = readString(in);
+                    MemberDescription errorObject = withErrorObjects ? (MemberDescription) in.readObject() : null;
+                    current = new Message(type, className, definition, tail, errorObject);
+                    current.setLevel(level);
+                } catch (EOFException e) {
+                    current = null;
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (current == null) {
+                close();
+            }
+            return current != null;
+        }
+
+        void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns messages of all runs in the merge order
+     */
+    class Merger implements Closeable {
+
+        private final PriorityQueue<Source> queue;
+
+        private Merger(List<Message> messages, final Comparator<Message> order) throws IOException {
+            queue = new PriorityQueue<>(runs.size() + 1, new Comparator<Source>() {
+                public int compare(Source s1, Source s2) {
+                    int comp = order.compare(s1.current, s2.current);
+                    return comp != 0 ? comp : s1.index - s2.index;
+                }
+            });
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    add(new Source(i, runs.get(i)));
+                }
+                add(new Source(runs.size(), messages));
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void add(Source s) throws IOException {
+            if (s.advance()) {
+                queue.add(s);
+            }
+        }
+
+        /**
+         * Returns the next message or null if there are no more messages
+         */
+        Message next() throws IOException {
+            Source s = queue.poll();
+            if (s == null) {
+                return null;
+            }
+            Message m = s.current;
+            add(s);
+            return m;
+        }
+
+        public void close() throws IOException {
+            for (Source s : queue) {
+                s.close();
+            }
+            queue.clear();
+        }
+    }
+}
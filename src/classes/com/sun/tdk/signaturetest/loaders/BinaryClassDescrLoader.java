@@ -24,7 +24,6 @@
  */
 package com.sun.tdk.signaturetest.loaders;
 
-import com.sun.tdk.signaturetest.SigTest;
 import com.sun.tdk.signaturetest.classpath.Classpath;
 import com.sun.tdk.signaturetest.core.AppContext;
 import com.sun.tdk.signaturetest.core.ClassDescriptionLoader;
@@ -50,7 +49,8 @@ import java.util.*;
  */
 public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHints {
 
-    private final BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
+    private final AppContext context = AppContext.getContext();
+    private final BaseOptions bo = context.getBean(BaseOptions.class);
 
     private static class BinaryClassDescription extends ClassDescription implements AutoCloseable {
 
@@ -269,12 +269,12 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
     }
 
     public ClassDescription altLoad(String className) throws ClassNotFoundException {
-        Classpath cp = AppContext.getContext().getInputClasspath();
+        Classpath cp = context.getInputClasspath();
         if (cp != null) {
             try {
                 return cp.findClassDescription(className);
             } catch (ClassNotFoundException e) {
-                ClassDescriptionLoader l = AppContext.getContext().getClassLoader();
+                ClassDescriptionLoader l = context.getClassLoader();
                 if (l != null) {
                     return l.load(className);
                 }
@@ -427,7 +427,9 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
         }
     }
 
-    private void readClass(BinaryClassDescription c, DataInput classData) throws IOException {
+    //  Read the class file up to the end of the constant pool
+    //
+    private void readHeader(BinaryClassDescription c, DataInput classData) throws IOException {
 
         int magic = classData.readInt();
         if (magic != MAGIC) {
@@ -441,6 +443,11 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
         c.setTiger(c.major_version >= TIGER_CLASS_VERSION);
 
         c.readCP(classData);
+    }
+
+    private void readClass(BinaryClassDescription c, DataInput classData) throws IOException {
+
+        readHeader(c, classData);
 
         int flags = classData.readUnsignedShort();
         c.setModifiers(flags);
@@ -553,14 +560,40 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
         }
     }
 
+    /**
+     * Returns the fields, methods and constructors referenced by the class.
+     * Method handles and bootstrap arguments refer to the same constant
+     * pool entries, so they are included.
+     */
     public List<MemberDescription> loadCalls(String name) throws ClassNotFoundException {
+        try {
+            return loadCalls(name, classpath.findClass(name));
+        } catch (IOException e) {
+            if (bo.isSet(Option.DEBUG)) {
+                SwissKnife.reportThrowable(e);
+            }
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    /**
+     * Returns the members referenced by the class file already read into
+     * {@code classFile}.
+     */
+    public List<MemberDescription> loadCalls(String name, byte[] classFile) throws ClassNotFoundException {
+        return loadCalls(name, new ByteArrayInputStream(classFile));
+    }
+
+    private List<MemberDescription> loadCalls(String name, InputStream is) throws ClassNotFoundException {
 
         // String name = ClassCorrector.stripGenerics(className);
         List<MemberDescription> result;
         try {
             BinaryClassDescription c = new BinaryClassDescription();
-            try (DataInputStream classData = new DataInputStream(classpath.findClass(name))) {
-                readClass(c, classData);
+            try (DataInputStream classData = new DataInputStream(is)) {
+                // member references are all in the constant pool,
+                // the rest of the class file is not read
+                readHeader(c, classData);
                 result = c.getMethodRefs();
             } finally {
                 c.cleanup();
@@ -621,7 +654,7 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
                 if (tmp != null) {
                     c.setNestedClasses(tmp.toArray(InnerDescr.EMPTY_ARRAY));
                 }
-            } else if (SigTest.isTigerFeaturesTracked && "PermittedSubclasses".equals(attrName)) {
+            } else if (context.isTigerFeaturesTracked() && "PermittedSubclasses".equals(attrName)) {
                 checkVersion(c, attrName, J15_CLASS_VERSION);
 
                 int n = is.readUnsignedShort();
@@ -991,27 +1024,27 @@ public class BinaryClassDescrLoader implements ClassDescriptionLoader, LoadingHi
                 } else if ("Signature".equals(name)) {
                     checkVersion(c, name, TIGER_CLASS_VERSION);
                     signature = c.getName(is.readUnsignedShort());
-                } else if (SigTest.isTigerFeaturesTracked && "RuntimeVisibleAnnotations".equals(name)) {
+                } else if (context.isTigerFeaturesTracked() && "RuntimeVisibleAnnotations".equals(name)) {
                     checkVersion(c, name, TIGER_CLASS_VERSION);
                     readAnnotations(c, 0);
 
-                } else if (SigTest.isTigerFeaturesTracked && "RuntimeInvisibleAnnotations".equals(name)) {
+                } else if (context.isTigerFeaturesTracked() && "RuntimeInvisibleAnnotations".equals(name)) {
                     checkVersion(c, name, TIGER_CLASS_VERSION);
                     readAnnotations(c, 0);
-                } else if (SigTest.isTigerFeaturesTracked && "RuntimeVisibleTypeAnnotations".equals(name)) {
+                } else if (context.isTigerFeaturesTracked() && "RuntimeVisibleTypeAnnotations".equals(name)) {
                     checkVersion(c, name, J7_CLASS_VERSION);
                     readExtAnnotations(c, 0);
-                } else if (SigTest.isTigerFeaturesTracked && "RuntimeInvisibleTypeAnnotations".equals(name)) {
+                } else if (context.isTigerFeaturesTracked() && "RuntimeInvisibleTypeAnnotations".equals(name)) {
                     checkVersion(c, name, J7_CLASS_VERSION);
                     readExtAnnotations(c, 0);
-                } else if (SigTest.isTigerFeaturesTracked
+                } else if (context.isTigerFeaturesTracked()
                         && ("RuntimeVisibleParameterAnnotations".equals(name) || "RuntimeInvisibleParameterAnnotations".equals(name))) {
                     checkVersion(c, name, TIGER_CLASS_VERSION);
                     int m = is.readUnsignedByte();
                     for (int l = 0; l < m; l++) {
                         readAnnotations(c, l + 1);
                     }
-                } else if (SigTest.isTigerFeaturesTracked && "AnnotationDefault".equals(name)) {
+                } else if (context.isTigerFeaturesTracked() && "AnnotationDefault".equals(name)) {
                     checkVersion(c, name, TIGER_CLASS_VERSION);
                     annodef = read_member_value(c);
                 } else {
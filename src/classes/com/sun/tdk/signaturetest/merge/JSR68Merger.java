@@ -26,18 +26,26 @@ package com.sun.tdk.signaturetest.merge;
 
 import com.sun.tdk.signaturetest.Result;
 import com.sun.tdk.signaturetest.core.AppContext;
+import com.sun.tdk.signaturetest.core.ClassDescriptionLoader;
+import com.sun.tdk.signaturetest.core.ClassHierarchy;
+import com.sun.tdk.signaturetest.core.ClassHierarchyImpl;
 import com.sun.tdk.signaturetest.core.Erasurator;
 import com.sun.tdk.signaturetest.core.Log;
+import com.sun.tdk.signaturetest.core.MemberCollectionBuilder;
+import com.sun.tdk.signaturetest.core.ThrowsNormalizer;
 import com.sun.tdk.signaturetest.core.context.MergeOptions;
 import com.sun.tdk.signaturetest.core.context.Option;
 import com.sun.tdk.signaturetest.loaders.VirtualClassDescriptionLoader;
 import com.sun.tdk.signaturetest.model.*;
 import com.sun.tdk.signaturetest.sigfile.FeaturesHolder;
+import com.sun.tdk.signaturetest.sigfile.Writer;
 import com.sun.tdk.signaturetest.util.I18NResourceBundle;
 import com.sun.tdk.signaturetest.util.SwissKnife;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Merges some APIs according JSR68 rules
@@ -52,12 +60,19 @@ public class JSR68Merger extends FeaturesHolder {
 
     private final Log log;
     private final Result result;
-    private final Erasurator erasurator;
+    // Erasurator keeps state between calls, classes are merged concurrently
+    private final ThreadLocal<Erasurator> erasurator = new ThreadLocal<Erasurator>() {
+        @Override
+        protected Erasurator initialValue() {
+            return new Erasurator();
+        }
+    };
+    // errors of the class being merged by the current thread
+    private final ThreadLocal<List<String>> pendingErrors = new ThreadLocal<>();
 
     public JSR68Merger(Log log, Result result, FeaturesHolder fh) {
         this.log = log;
         this.result = result;
-        erasurator = new Erasurator();
         setFeatures(fh.getSupportedFeatures());
     }
 
@@ -65,51 +80,73 @@ public class JSR68Merger extends FeaturesHolder {
         //this.mode = mode;
         VirtualClassDescriptionLoader result = new VirtualClassDescriptionLoader();
 
+        // all occurrences of each class in the input APIs, in the files order
+        Map<String, Occurrences> classes = new TreeMap<>();
         for (int i = 0; i < files.length; i++) {
-            MergedSigFile mf = files[i];
-            for (ClassDescription cd : mf.getClassSet().values()) {
-                // If one of input APIs contain an element and other doesn't,
-                // this element goes to the result API without modification except for the following case :
-
-                // 1) is it unique?
-                boolean unique = true;
-                ArrayList<ClassDescription> sameClasses = new ArrayList<>();
-                ArrayList<MergedSigFile> filesForSameClasses = new ArrayList<>();
-                sameClasses.add(cd);
-                filesForSameClasses.add(mf);
-                for (int j = 0; j < files.length; j++) {
-                    if (i == j) {
-                        continue;
-                    }
-                    MergedSigFile mfOther = files[j];
-                    if (mfOther.getClassSet().containsKey(cd.getQualifiedName())) {
-                        unique = false;
-                        sameClasses.add(mfOther.getClassSet().get(cd.getQualifiedName()));
-                        filesForSameClasses.add(mfOther);
-                    }
+            for (ClassDescription cd : files[i].getClassSet().values()) {
+                Occurrences occ = classes.get(cd.getQualifiedName());
+                if (occ == null) {
+                    occ = new Occurrences();
+                    classes.put(cd.getQualifiedName(), occ);
                 }
+                occ.classes.add(cd);
+                occ.files.add(files[i]);
+            }
+        }
 
-                // If this element is first declared class member in inheritance
-                // chain and the other API inherits the same element, then this element doesn't
-                // go to the result API.
-                if (unique) {
-                    result.add(cd);
+        // If one of input APIs contain an element and other doesn't,
+        // this element goes to the result API without modification.
+        // With -threads the rest of classes are merged in parallel, the
+        // results and errors are collected in the order of class names
+        int threads = mo.getValue(Option.THREADS) == null ? 1 : Integer.parseInt(mo.getValue(Option.THREADS));
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            List<Future<MergedClass>> merged = new ArrayList<>();
+            for (Occurrences occ : classes.values()) {
+                if (occ.classes.size() == 1) {
+                    result.add(occ.classes.get(0));
+                } else if (executor == null) {
+                    add(result, mergeCollectingErrors(occ));
                 } else {
-                    //                    logger.fine("Not unique, to merge " + cd.getQualifiedName());
-                    ClassDescription resultedClass = new ClassDescription();
-                    resultedClass.setupClassName(cd.getQualifiedName());
-
-                    ClassDescription[] classes = sameClasses.toArray(new ClassDescription[0]);
-                    MergedSigFile[] filesForClasses = filesForSameClasses.toArray(new MergedSigFile[0]);
-                    if (merge(classes, resultedClass, filesForClasses) && merge2(classes, resultedClass)) {
-                        result.add(resultedClass);
-                    }
+                    merged.add(executor.submit(mergeTask(occ)));
+                }
+            }
+            for (Future<MergedClass> f : merged) {
+                add(result, f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        // nested classes of the result by simple name
+        Map<String, List<ClassDescription>> innersByName = new HashMap<>();
+        for (Iterator<ClassDescription> it = result.getClassIterator(); it.hasNext(); ) {
+            ClassDescription cd = it.next();
+            if (cd.getQualifiedName().contains("$")) {
+                List<ClassDescription> l = innersByName.get(cd.getName());
+                if (l == null) {
+                    l = new ArrayList<>(2);
+                    innersByName.put(cd.getName(), l);
                 }
+                l.add(cd);
             }
         }
 
         Iterator<ClassDescription> it = result.getClassIterator();
-        List<ClassDescription> innersToRemove = new ArrayList<>();
+        Set<String> innersToRemove = new HashSet<>();
         nextClass:
         while (it.hasNext()) {
             ClassDescription cd = it.next();
@@ -123,70 +160,316 @@ public class JSR68Merger extends FeaturesHolder {
             if (cd.getQualifiedName().contains("$")) {
                 try {
                     ClassDescription outer = result.load(cd.getDeclaringClassName());
-                    InnerDescr[] dc = outer.getDeclaredClasses();
-                    for (InnerDescr innerDescr : dc) {
-                        if (innerDescr.getQualifiedName().equals(cd.getQualifiedName())) {
-                            continue nextClass;
-                        }
+                    if (isDeclared(outer, cd.getQualifiedName())) {
+                        continue;
                     }
 
-                    for (Iterator<ClassDescription> it2 = result.getClassIterator(); it2.hasNext(); ) {
-                        ClassDescription similarInner = it2.next();
-                        if (similarInner.getQualifiedName().contains("$")
-                                && similarInner.getName().equals(cd.getName())) {
-                            ClassDescription parent = outer;
-                            while (true) {
-                                try {
-                                    parent = result.load(parent.getSuperClass().getQualifiedName());
-                                    if (similarInner.getDeclaringClassName().equals(parent.getQualifiedName())) {
-                                        for (int i = 0; i < files.length; i++) {
-                                            if (files[i].getClassSet().containsKey(cd.getQualifiedName())) {
-                                                for (int j = 0; j < files.length; j++) {
-                                                    if (files[j].getClassSet().containsKey(similarInner.getQualifiedName())) {
-                                                        if (j == i) {
-                                                            continue nextClass;
-                                                        }
-                                                    }
-                                                }
-                                                innersToRemove.add(cd);
-                                                continue nextClass;
-                                            }
-                                        }
-
-                                    }
-                                } catch (Exception e) {
-                                    // no parents
-                                    break;
-                                }
+                    // If a superclass of the outer class declares nested class with
+                    // the same simple name, the class is dropped unless both nested
+                    // classes come from the first API containing the class
+                    Set<String> parents = getSuperclasses(outer, result);
+                    for (ClassDescription similarInner : innersByName.get(cd.getName())) {
+                        if (parents.contains(similarInner.getDeclaringClassName())) {
+                            MergeSource first = classes.get(cd.getQualifiedName()).files.get(0);
+                            if (!first.contains(similarInner.getQualifiedName())) {
+                                innersToRemove.add(cd.getQualifiedName());
                             }
-
+                            continue nextClass;
                         }
                     }
 
-                    InnerDescr d = new InnerDescr();
-                    d.setupClassName(cd.getQualifiedName());
-                    d.setModifiers(cd.getModifiers());
-                    InnerDescr[] newInners = new InnerDescr[dc.length + 1];
-                    System.arraycopy(dc, 0, newInners, 0, dc.length);
-                    newInners[dc.length] = d;
-                    outer.setNestedClasses(newInners);
+                    addNested(outer, cd);
 
                 } catch (ClassNotFoundException ex) {
                     SwissKnife.reportThrowable(ex);
                 }
             }
         }
-        it = result.getClassIterator();
-        while (it.hasNext()) {
-            if (innersToRemove.contains(it.next())) {
-                it.remove();
-            }
+        for (String name : innersToRemove) {
+            result.remove(name);
         }
 
         return result;
     }
 
-    private boolean merge(ClassDescription[] similarClasses, ClassDescription result, MergedSigFile[] sigfiles) {
+    /**
+     * Returns names of superclasses of the given class found in the result
+     */
+    private static Set<String> getSuperclasses(ClassDescription cd, VirtualClassDescriptionLoader result) {
+        Set<String> parents = new HashSet<>();
+        ClassDescription parent = cd;
+        while (parent.getSuperClass() != null) {
+            try {
+                parent = result.load(parent.getSuperClass().getQualifiedName());
+            } catch (ClassNotFoundException e) {
+                // no parents
+                break;
+            }
+            if (!parents.add(parent.getQualifiedName())) {
+                break;
+            }
+        }
+        return parents;
+    }
+
+    private void add(VirtualClassDescriptionLoader result, MergedClass mc) {
+        for (String msg : mc.errors) {
+            error(msg);
+        }
+        if (mc.cd != null) {
+            result.add(mc.cd);
+        }
+    }
+
+    private Callable<MergedClass> mergeTask(final Occurrences occ) {
+        return new Callable<MergedClass>() {
+            public MergedClass call() {
+                return mergeCollectingErrors(occ);
+            }
+        };
+    }
+
+    private MergedClass mergeCollectingErrors(Occurrences occ) {
+        MergedClass mc = new MergedClass();
+        pendingErrors.set(mc.errors);
+        try {
+            mc.cd = mergeClass(occ);
+        } finally {
+            pendingErrors.remove();
+        }
+        return mc;
+    }
+
+    /**
+     * Merges the same class from several APIs, returns null if the class
+     * can't be merged
+     */
+    private ClassDescription mergeClass(Occurrences occ) {
+        // merging changes the classes, the inputs are read by other threads
+        ClassDescription[] similar = new ClassDescription[occ.classes.size()];
+        for (int i = 0; i < similar.length; i++) {
+            similar[i] = copyOf(occ.classes.get(i));
+        }
+        MergeSource[] filesForClasses = occ.files.toArray(new MergeSource[0]);
+        ClassDescription resultedClass = new ClassDescription();
+        resultedClass.setupClassName(similar[0].getQualifiedName());
+        if (merge(similar, resultedClass, filesForClasses) && merge2(similar, resultedClass)) {
+            return resultedClass;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of the class which declared members can be changed
+     * without changing the original
+     */
+    private static ClassDescription copyOf(ClassDescription cd) {
+        ClassDescription copy = (ClassDescription) cd.clone();
+        ConstructorDescr[] ctors = cd.getDeclaredConstructors().clone();
+        for (int i = 0; i < ctors.length; i++) {
+            ctors[i] = (ConstructorDescr) ctors[i].clone();
+        }
+        copy.setConstructors(ctors);
+        MethodDescr[] methods = cd.getDeclaredMethods().clone();
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = (MethodDescr) methods[i].clone();
+        }
+        copy.setMethods(methods);
+        FieldDescr[] fields = cd.getDeclaredFields().clone();
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = (FieldDescr) fields[i].clone();
+        }
+        copy.setFields(fields);
+        return copy;
+    }
+
+    /**
+     * Merges signature files with classes sorted by name and writes the
+     * result. The inputs are read in lockstep, so only one class from each
+     * file is in memory at a time plus the top level class being merged with
+     * its nested classes, which are written together because nested classes
+     * may be added to the outer one. Superclasses of classes from different
+     * APIs are looked up in the inputs, not in the merged result, as well as
+     * exceptions when throws lists of the merged classes are normalized.
+     */
+    public void merge(final SortedSigFile[] files, Writer writer) throws IOException {
+        // superclasses aren't available here, inherited annotations are already
+        // in the signature files
+        MemberCollectionBuilder builder = new MemberCollectionBuilder(log);
+        builder.setBuildMode(MemberCollectionBuilder.BuildMode.SIGFILE);
+        ClassHierarchy noClasses = new ClassHierarchyImpl(new VirtualClassDescriptionLoader(), ClassHierarchy.ALL_PUBLIC);
+        ClassHierarchy inputs = new ClassHierarchyImpl(new ClassDescriptionLoader() {
+            public ClassDescription load(String className) throws ClassNotFoundException {
+                for (SortedSigFile f : files) {
+                    if (f.contains(className)) {
+                        return f.load(className);
+                    }
+                }
+                throw new ClassNotFoundException(className);
+            }
+        }, ClassHierarchy.ALL_PUBLIC);
+        ThrowsNormalizer normalizer = new ThrowsNormalizer();
+        // the current top level class and its nested classes in the name order
+        List<ClassDescription> nest = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+
+        while (true) {
+            String name = null;
+            for (SortedSigFile f : files) {
+                ClassDescription c = f.current();
+                if (c != null && (name == null || c.getQualifiedName().compareTo(name) < 0)) {
+                    name = c.getQualifiedName();
+                }
+            }
+            if (name == null) {
+                break;
+            }
+
+            Occurrences occ = new Occurrences();
+            for (SortedSigFile f : files) {
+                ClassDescription c = f.current();
+                if (c != null && name.equals(c.getQualifiedName())) {
+                    occ.classes.add(c);
+                    occ.files.add(f);
+                    f.advance();
+                }
+            }
+
+            // If one of input APIs contain an element and other doesn't,
+            // this element goes to the result API without modification.
+            ClassDescription cd = occ.classes.size() == 1 ? occ.classes.get(0) : mergeClass(occ);
+            if (cd == null) {
+                continue;
+            }
+
+            if (!nest.isEmpty() && !name.startsWith(nest.get(0).getQualifiedName() + "$")) {
+                write(writer, builder, noClasses, inputs, normalizer, nest, removed);
+            }
+
+            if (contains(files, cd.getPackageName())) {
+                error(i18n.getString("Merger.error.packageconflict", cd.getPackageName()));
+            }
+            if (name.contains("$")) {
+                ClassDescription outer = null;
+                for (int i = nest.size() - 1; i >= 0 && outer == null; i--) {
+                    if (nest.get(i).getQualifiedName().equals(cd.getDeclaringClassName())) {
+                        outer = nest.get(i);
+                    }
+                }
+                if (outer == null) {
+                    SwissKnife.reportThrowable(new ClassNotFoundException(cd.getDeclaringClassName()));
+                } else if (!isDeclared(outer, name)) {
+                    String similarInner = findSimilarInner(files, outer, cd.getName());
+                    if (similarInner == null) {
+                        addNested(outer, cd);
+                    } else if (!occ.files.get(0).contains(similarInner)) {
+                        removed.add(name);
+                    }
+                }
+            }
+            nest.add(cd);
+        }
+
+        write(writer, builder, noClasses, inputs, normalizer, nest, removed);
+    }
+
+    private static void write(Writer writer, MemberCollectionBuilder builder, ClassHierarchy ch, ClassHierarchy inputs,
+                              ThrowsNormalizer normalizer, List<ClassDescription> classes, Set<String> removed) {
+        for (ClassDescription cd : classes) {
+            if (removed.remove(cd.getQualifiedName())) {
+                continue;
+            }
+            try {
+                cd.setHierarchy(ch);
+                builder.createMembers(cd, false, false, false);
+                cd.setHierarchy(inputs);
+                normalizer.normThrows(cd, true);
+            } catch (ClassNotFoundException e) {
+                SwissKnife.reportThrowable(e);
+            }
+            writer.write(cd);
+        }
+        classes.clear();
+    }
+
+    private static boolean contains(SortedSigFile[] files, String className) {
+        for (SortedSigFile f : files) {
+            if (f.contains(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeclared(ClassDescription outer, String innerName) {
+        for (InnerDescr innerDescr : outer.getDeclaredClasses()) {
+            if (innerDescr.getQualifiedName().equals(innerName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addNested(ClassDescription outer, ClassDescription cd) {
+        InnerDescr[] dc = outer.getDeclaredClasses();
+        InnerDescr d = new InnerDescr();
+        d.setupClassName(cd.getQualifiedName());
+        d.setModifiers(cd.getModifiers());
+        InnerDescr[] newInners = new InnerDescr[dc.length + 1];
+        System.arraycopy(dc, 0, newInners, 0, dc.length);
+        newInners[dc.length] = d;
+        outer.setNestedClasses(newInners);
+    }
+
+    /**
+     * Returns the first by name nested class with the given simple name
+     * declared by a superclass of the outer class
+     */
+    private static String findSimilarInner(SortedSigFile[] files, ClassDescription outer, String simpleName) {
+        String found = null;
+        Set<String> parents = new HashSet<>();
+        String parent = outer.getSuperClass() == null ? null : outer.getSuperClass().getQualifiedName();
+        while (parent != null && parents.add(parent)) {
+            SortedSigFile f = null;
+            for (SortedSigFile file : files) {
+                if (file.contains(parent)) {
+                    f = file;
+                    break;
+                }
+            }
+            if (f == null) {
+                // no parents
+                break;
+            }
+            String inner = parent + "$" + simpleName;
+            if (contains(files, inner) && (found == null || inner.compareTo(found) < 0)) {
+                found = inner;
+            }
+            parent = f.getSuperclassName(parent);
+        }
+        return found;
+    }
+
+    /**
+     * The same class found in several input APIs
+     */
+    private static class Occurrences {
+
+        final List<ClassDescription> classes = new ArrayList<>(2);
+        final List<MergeSource> files = new ArrayList<>(2);
+
+    }
+
+    /**
+     * The result of merging of one class and errors found
+     */
+    private static class MergedClass {
+
+        ClassDescription cd;
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private boolean merge(ClassDescription[] similarClasses, ClassDescription result, MergeSource[] sigfiles) {
 
         boolean mAbs = similarClasses[0].isAbstract();
         for (int i = 1; i < similarClasses.length; i++) {
@@ -234,7 +517,7 @@ public class JSR68Merger extends FeaturesHolder {
     }
 
     private void checkGenerics(ClassDescription result) {
-        ClassDescription eResult = erasurator.fullErasure(result);
+        ClassDescription eResult = erasurator.get().fullErasure(result);
         ConstructorDescr[] genCostr = eResult.getDeclaredConstructors();
         MethodDescr[] genMeth = eResult.getDeclaredMethods();
         FieldDescr[] genFld = eResult.getDeclaredFields();
@@ -292,7 +575,7 @@ public class JSR68Merger extends FeaturesHolder {
             MethodDescr[] genMeth = hasGenCD.getDeclaredMethods();
             FieldDescr[] genFld = hasGenCD.getDeclaredFields();
 
-            ClassDescription hasGenEraCD = erasurator.fullErasure(hasGenCD);
+            ClassDescription hasGenEraCD = erasurator.get().fullErasure(hasGenCD);
             ClassDescription noGenCD = similarClasses[noGenPos];
             if (noGenCD.equals(hasGenEraCD)) {
                 noGenCD.setTypeParameters(hasGenCD.getTypeParameters());
@@ -442,7 +725,7 @@ public class JSR68Merger extends FeaturesHolder {
     // of c1, use superclass of c2 as superclass for the new
     // element.
     // Otherwise declare conflict
-    private boolean mergeSuprs(ClassDescription[] similarClasses, ClassDescription result, MergedSigFile[] sigfiles) {
+    private boolean mergeSuprs(ClassDescription[] similarClasses, ClassDescription result, MergeSource[] sigfiles) {
         ArrayList<SuperClass> superclasses = new ArrayList<>();
         // collect superclasses
         for (ClassDescription similarClass : similarClasses) {
@@ -463,11 +746,11 @@ public class JSR68Merger extends FeaturesHolder {
             return true;
         }
 
-        for (MergedSigFile file : sigfiles) {
+        for (MergeSource file : sigfiles) {
             // 1) find a file which contains all superclasses
             boolean all = true;
             for (SuperClass sc : superclasses) {
-                if (!file.getClassSet().containsKey(sc.getQualifiedName())) {
+                if (!file.contains(sc.getQualifiedName())) {
                     all = false;
                     break;
                 }
@@ -485,8 +768,7 @@ public class JSR68Merger extends FeaturesHolder {
                         }
                         SuperClass scSuper = superclasses.get(k);
 
-                        if (!file.getClassHierarchy().isSubclass(scSub.getQualifiedName(),
-                                scSuper.getQualifiedName())) {
+                        if (!file.isSubclass(scSub.getQualifiedName(), scSuper.getQualifiedName())) {
                             subSuperFound = false;
                             break;
                         }
@@ -877,6 +1159,11 @@ public class JSR68Merger extends FeaturesHolder {
     }
 
     private void error(String msg) {
+        List<String> pending = pendingErrors.get();
+        if (pending != null) {
+            pending.add(msg);
+            return;
+        }
         log.storeError(msg, null);
         result.error(i18n.getString("Merger.error"));
     }
@@ -34,7 +34,7 @@ import com.sun.tdk.signaturetest.util.SwissKnife;
 import java.io.IOException;
 import java.util.HashMap;
 
-public class MergedSigFile {
+public class MergedSigFile implements MergeSource {
 
     private final ClassHierarchy ch;
     private final MultipleFileReader loader;
@@ -69,6 +69,17 @@ public class MergedSigFile {
         return ch;
     }
 
+    public boolean contains(String className) {
+        return getClassSet().containsKey(className);
+    }
+
+    public boolean isSubclass(String subClassName, String superClassName) throws ClassNotFoundException {
+        // the hierarchy reads classes from the loader which is not thread-safe
+        synchronized (ch) {
+            return ch.isSubclass(subClassName, superClassName);
+        }
+    }
+
     MultipleFileReader getLoader() {
         return loader;
     }
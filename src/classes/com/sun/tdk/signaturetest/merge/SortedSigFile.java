@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.signaturetest.merge;
+
+import com.sun.tdk.signaturetest.core.ClassDescriptionLoader;
+import com.sun.tdk.signaturetest.core.ClassHierarchy;
+import com.sun.tdk.signaturetest.core.ClassHierarchyImpl;
+import com.sun.tdk.signaturetest.core.ThrowsNormalizer;
+import com.sun.tdk.signaturetest.model.ClassDescription;
+import com.sun.tdk.signaturetest.model.SuperClass;
+import com.sun.tdk.signaturetest.sigfile.FeaturesHolder;
+import com.sun.tdk.signaturetest.sigfile.FileManager;
+import com.sun.tdk.signaturetest.sigfile.Reader;
+import com.sun.tdk.signaturetest.util.I18NResourceBundle;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Signature file with classes sorted by name which is read one class at a
+ * time. Only names and superclasses of all the classes are kept in memory,
+ * they are collected by a preliminary pass over the file. Inherited members
+ * can't be built without the superclasses in memory, so the classes must be
+ * already corrected as Setup and Merge write them, a file with a hidden
+ * superclass is refused. Throws lists are normalized while the classes are
+ * read, as Merge does.
+ *
+ * @see JSR68Merger#merge(SortedSigFile[], com.sun.tdk.signaturetest.sigfile.Writer)
+ */
+public class SortedSigFile implements MergeSource, ClassDescriptionLoader, AutoCloseable {
+
+    private static final I18NResourceBundle i18n = I18NResourceBundle.getBundleForClass(SortedSigFile.class);
+
+    private final URL fileURL;
+    private final Reader in;
+    // class name -> superclass name or null
+    private final Map<String, String> superclasses = new HashMap<>();
+    private final ClassHierarchy hierarchy = new ClassHierarchyImpl(this, ClassHierarchy.ALL_PUBLIC);
+    private final ThrowsNormalizer normalizer = new ThrowsNormalizer();
+    private ClassDescription current;
+
+    public SortedSigFile(FileManager fileManager, URL fileURL) throws IOException {
+        this.fileURL = fileURL;
+
+        try (Reader scan = open(fileManager)) {
+            Set<String> hidden = new HashSet<>();
+            ClassDescription cd;
+            String prev = null;
+            while ((cd = scan.readNextClass()) != null) {
+                String name = cd.getQualifiedName();
+                if (prev != null && prev.compareTo(name) >= 0) {
+                    throw new IOException(i18n.getString("SortedSigFile.error.notsorted", new Object[]{fileURL, name}));
+                }
+                SuperClass sc = cd.getSuperClass();
+                superclasses.put(name, sc == null ? null : sc.getQualifiedName());
+                if (!cd.isPublic() && !cd.isProtected()) {
+                    hidden.add(name);
+                }
+                prev = name;
+            }
+            for (Map.Entry<String, String> e : superclasses.entrySet()) {
+                if (hidden.contains(e.getValue())) {
+                    throw new IOException(i18n.getString("SortedSigFile.error.notnormalized", new Object[]{fileURL, e.getKey()}));
+                }
+            }
+        }
+
+        in = open(fileManager);
+        advance();
+    }
+
+    private Reader open(FileManager fileManager) throws IOException {
+        Reader r = fileManager.getReader(fileURL);
+        if (r == null) {
+            throw new IOException(i18n.getString("SortedSigFile.error.format", fileURL));
+        }
+        if (!r.readSignatureFile(fileURL)) {
+            r.close();
+            throw new IOException(i18n.getString("SortedSigFile.error.format", fileURL));
+        }
+        return r;
+    }
+
+    public Set<FeaturesHolder.Feature> getSupportedFeatures() {
+        return in.getAllSupportedFeatures();
+    }
+
+    /**
+     * Returns the current class or null if the end of file is reached
+     */
+    public ClassDescription current() {
+        return current;
+    }
+
+    public void advance() throws IOException {
+        current = in.readNextClass();
+        if (current != null) {
+            current.setHierarchy(hierarchy);
+            try {
+                normalizer.normThrows(current, true);
+            } catch (ClassNotFoundException e) {
+                // the same as Merge does
+            }
+        }
+    }
+
+    /**
+     * Returns superclass name of the given class or null
+     */
+    public String getSuperclassName(String className) {
+        return superclasses.get(className);
+    }
+
+    /**
+     * Returns a class which has only the name and the superclass, that is
+     * enough to check exceptions in throws lists
+     */
+    public ClassDescription load(String className) throws ClassNotFoundException {
+        if (!superclasses.containsKey(className)) {
+            throw new ClassNotFoundException(className);
+        }
+        ClassDescription cd = new ClassDescription();
+        cd.setupClassName(className);
+        String superName = superclasses.get(className);
+        if (superName != null) {
+            SuperClass sc = new SuperClass();
+            sc.setupClassName(superName);
+            cd.setSuperClass(sc);
+        }
+        return cd;
+    }
+
+    public boolean contains(String className) {
+        return superclasses.containsKey(className);
+    }
+
+    public boolean isSubclass(String subClassName, String superClassName) {
+        String name = superclasses.get(subClassName);
+        while (name != null) {
+            if (name.equals(superClassName)) {
+                return true;
+            }
+            name = superclasses.get(name);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        current = null;
+        in.close();
+    }
+}
@@ -26,12 +26,15 @@ package com.sun.tdk.signaturetest.model;
 
 import com.sun.tdk.signaturetest.util.SwissKnife;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.*;
 
 /**
  * @author Serguei Ivashin (isl@nbsp.nsk.su)
  */
-public class AnnotationItem implements Comparable<AnnotationItem> {
+public class AnnotationItem implements Comparable<AnnotationItem>, Serializable {
 
     public static final String ANNOTATION_PREFIX = "anno";
     public static final String ANNOTATION_INHERITED = "java.lang.annotation.Inherited";
@@ -129,6 +132,13 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
         this.name = name.intern();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (name != null) {
+            name = name.intern();
+        }
+    }
+
     public final int getTarget() {
         return target;
     }
@@ -187,7 +197,7 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
         return m;
     }
 
-    public static class Member implements Comparable<Member> {
+    public static class Member implements Comparable<Member>, Serializable {
 
         public String type;
         public String name;
@@ -267,9 +277,11 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
                 this.value = "class " + this.value.substring(INTF.length());
             }
         }
+
+        static final long serialVersionUID = 5855130245222742359L;
     }
 
-    public static class ValueWrap {
+    public static class ValueWrap implements Serializable {
 
         final String value;
 
@@ -280,6 +292,8 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
         public String toString() {
             return value;
         }
+
+        static final long serialVersionUID = -5323202886180248505L;
     }
 
     public Member findByName(String name) {
@@ -306,10 +320,20 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
 
     public String toString() {
         StringBuffer sb = new StringBuffer();
-        sb.append(getPrefix()).append(" ");
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the same text as {@link #toString()} returns to the given
+     * buffer
+     */
+    public void appendTo(StringBuffer sb) {
+        sb.append(getPrefix()).append(' ');
 
-        if (getSpecificData() != null && !getSpecificData().isEmpty()) {
-            sb.append(getSpecificData()).append(" ");
+        String specificData = getSpecificData();
+        if (specificData != null && !specificData.isEmpty()) {
+            sb.append(specificData).append(' ');
         }
 
         sb.append(name).append('(');
@@ -319,13 +343,11 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
                 if (i++ != 0) {
                     sb.append(", ");
                 }
-                sb.append(m.type).append(' ').append(m.name).append("=");
+                sb.append(m.type).append(' ').append(m.name).append('=');
                 sb.append(m.value);
             }
         }
         sb.append(')');
-
-        return sb.toString();
     }
 
     public void setInheritable(boolean inh) {
@@ -344,4 +366,6 @@ public class AnnotationItem implements Comparable<AnnotationItem> {
         }
         return tmp;
     }
+
+    static final long serialVersionUID = -679410895263755162L;
 }
@@ -364,4 +364,6 @@ public class AnnotationItemEx extends AnnotationItem {
     protected String getPrefix() {
         return ANNOTATION_EX_PREFIX;
     }
+
+    static final long serialVersionUID = 235926921500441535L;
 }
@@ -310,7 +310,7 @@ public class ClassDescription extends MemberDescription {
     //  List of type parameters (type variables) declared by the class
     // this member must be used only loaders!
     // TODO remove this member out of ClassDescription!
-    protected TypeParameterList typeparamList = null;
+    protected transient TypeParameterList typeparamList = null;
 
     public TypeParameterList getTypeparamList() {
         return typeparamList;
@@ -738,7 +738,7 @@ public class ClassDescription extends MemberDescription {
         return false;
     }
 
-    private ClassHierarchy hierarchy;
+    private transient ClassHierarchy hierarchy;
 
     public ClassHierarchy getClassHierarchy() {
         return hierarchy;
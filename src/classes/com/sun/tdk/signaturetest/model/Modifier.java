@@ -132,6 +132,20 @@ public final class Modifier implements Serializable {
         return buf.toString();
     }
 
+    /**
+     * Appends the modifiers to the given buffer, each of them preceded by a
+     * space. Produces the same modifiers as
+     * {@link #toString(MemberType, int, boolean)} without building a string.
+     */
+    public static void appendTo(StringBuffer buf, MemberType type, int modifiers, boolean trackedOnly) {
+        for (Modifier m : type.getApplicableModifiers()) {
+            if ((m.value & modifiers) != 0 && (!trackedOnly || m.isTracked())) {
+                buf.append(' ');
+                buf.append(m.name);
+            }
+        }
+    }
+
     private Modifier(String name, int vmID, int reflID, boolean isTracked) {
 
         if (vmID != reflID && reflID != 0) {
@@ -34,6 +34,10 @@ import java.util.List;
 import java.util.StringTokenizer;
 
 /**
+ * Parses annotation descriptions written to the signature file. The text is
+ * scanned once from left to right, nested values (arrays, string literals and
+ * annotations) are skipped by tracking the nesting level only.
+ *
  * @author Sergey Ivashin
  * @author Mikhail Ershov
  */
@@ -45,115 +49,94 @@ public class AnnotationParser {
     // Opposite action that toString() method does.
     // TODO should be moved to the parser as well as "toString" moved to the writer
     public AnnotationItem parse(String str) {
-        return parse(new StringBuffer(str));
-    }
-
-    private AnnotationItem parse(StringBuffer theRest) {
 
-        if (theRest == null) {
+        if (str == null) {
             return null;
         }
 
-//        str = "anno 0 javax.xml.ws.BindingType(java.lang.String value=\"http://schemas.xmlsoap.org/wsdl/soap/http\", javax.xml.ws.Feature[] features=[anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\"http://www.w3.org/2005/08/addressing/module\", javax.xml.ws.FeatureParameter[] parameters=[]), anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\"http://www.w3.org/2004/08/soap/features/http-optimization\", javax.xml.ws.FeatureParameter[] parameters=[anno 0 javax.xml.ws.FeatureParameter(java.lang.String name=\"MTOM_THRESHOLD\", java.lang.String value=\"1000\")])]):     anno 0 javax.xml.ws.BindingType(java.lang.String value=\\\"http://schemas.xmlsoap.org/wsdl/soap/http\\\", javax.xml.ws.Feature[] features=[anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\\\"http://www.w3.org/2005/08/addressing/module\\\", javax.xml.ws.FeatureParameter[] parameters=[]), anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\\\"http://www.w3.org/2004/08/soap/features/http-optimization\\\", javax.xml.ws.FeatureParameter[] parameters=[anno 0 javax.xml.ws.FeatureParameter(java.lang.String name=\\\"MTOM_THRESHOLD\\\", java.lang.String value=\\\"1000\\\")])])";
-        String str = theRest.toString();
-        AnnotationItem item;
+//        str = "anno 0 javax.xml.ws.BindingType(java.lang.String value=\"http://schemas.xmlsoap.org/wsdl/soap/http\", javax.xml.ws.Feature[] features=[anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\"http://www.w3.org/2005/08/addressing/module\", javax.xml.ws.FeatureParameter[] parameters=[]), anno 0 javax.xml.ws.Feature(boolean enabled=true, java.lang.String value=\"http://www.w3.org/2004/08/soap/features/http-optimization\", javax.xml.ws.FeatureParameter[] parameters=[anno 0 javax.xml.ws.FeatureParameter(java.lang.String name=\"MTOM_THRESHOLD\", java.lang.String value=\"1000\")])])";
+        return parseAnnotation(new Cursor(str, 0, str.length()));
+    }
 
-        if (!str.startsWith(AnnotationItem.ANNOTATION_PREFIX) && !str.startsWith(AnnotationItemEx.ANNOTATION_EX_PREFIX)) {
-            throw new IllegalArgumentException(i18n.getString("AnnotationParser.error.bad_annotation_descr") + str);
+    // unpack annotations from Container's array
+    public List<AnnotationItem> unpack(String annS) {
+        String str = annS.trim();
+        if (str.charAt(0) != '[') {
+            return Collections.emptyList();
         }
 
-        if (str.startsWith(AnnotationItemEx.ANNOTATION_EX_PREFIX)) {
-            item = new AnnotationItemEx();
-        } else {
-            item = new AnnotationItem();
+        int last = str.length();
+        if (str.charAt(last - 1) == ']') {
+            last--;
         }
 
-        int pos;
-        pos = str.indexOf(' ');
-        // skip the prefix
-        str = str.substring(pos).trim();
-
-        pos = str.indexOf(' ');
-        String specificData = str.substring(0, pos);
-        if (item instanceof AnnotationItemEx) {
-            parseAnnExData((AnnotationItemEx) item, specificData);
-        } else {
-            parseAnnData(item, specificData);
+        List<AnnotationItem> res = new ArrayList<>();
+        Cursor c = new Cursor(str, 1, last);
+        while (c.pos < c.end) {
+            res.add(parseAnnotation(c));
+            if (c.pos < c.end && c.src.charAt(c.pos) == ',') {
+                c.pos++;
+            }
+            if (c.pos < c.end && c.src.charAt(c.pos) == ' ') {
+                c.pos++;
+            }
         }
 
-        // remove target
-        str = str.substring(pos + 1);
+        return res;
+    }
 
-        pos = str.indexOf('(');
-        item.setName(str.substring(0, pos).trim());
-        int endPos = findCorresponding(str, '(', ')');
-        String rest = str.substring(endPos + 1);
-        str = str.substring(pos + 1, endPos);
+    /**
+     * Parses annotation starting at the current position and moves the
+     * position right after its closing bracket.
+     */
+    private AnnotationItem parseAnnotation(Cursor c) {
 
-        if (!str.isEmpty()) {
+        AnnotationItem item;
 
-            while (!str.isEmpty() && str.charAt(0) != ')') {
-                pos = parseMember(item, str);
-                str = str.substring(pos);
-                if (!str.isEmpty() && str.charAt(0) == ',') {
-                    str = str.substring(1).trim();
-                }
-            }
+        if (c.src.startsWith(AnnotationItemEx.ANNOTATION_EX_PREFIX, c.pos)) {
+            item = new AnnotationItemEx();
+        } else if (c.src.startsWith(AnnotationItem.ANNOTATION_PREFIX, c.pos)) {
+            item = new AnnotationItem();
+        } else {
+            throw c.badDescription();
         }
 
-        theRest.delete(0, theRest.length() - 1); // clear old if any
-        theRest.append(rest);
-
-        return item;
-
-    }
+        // skip the prefix
+        c.skipTo(' ');
+        c.skipSpaces();
 
-    // unpack annotations from Container's array
-    public List<AnnotationItem> unpack(String annS) {
-        List<AnnotationItem> res = new ArrayList<>();
-        String str = annS.trim();
-        if (str.charAt(0) == '[') {
-            str = str.substring(1);
+        int start = c.pos;
+        c.skipTo(' ');
+        String specificData = c.src.substring(start, c.pos);
+        if (item instanceof AnnotationItemEx) {
+            parseAnnExData((AnnotationItemEx) item, specificData);
         } else {
-            return Collections.emptyList();
+            parseAnnData(item, specificData);
         }
+        c.pos++;
 
-        if (str.charAt(str.length() - 1) == ']') {
-            str = str.substring(0, str.length() - 1);
+        start = c.pos;
+        c.skipTo('(');
+        if (c.pos >= c.end) {
+            throw c.badDescription();
         }
-
-        StringBuffer sb = new StringBuffer(str);
-        while (sb.length() > 0) {
-            AnnotationItem nA = parse(sb);
-            res.add(nA);
-            if (sb.length() > 0 && sb.charAt(0) == ')') {
-                sb.deleteCharAt(0);
-            }
-            if (sb.length() > 0 && sb.charAt(0) == ',') {
-                sb.deleteCharAt(0);
-            }
-            if (sb.length() > 0 && sb.charAt(0) == ' ') {
-                sb.deleteCharAt(0);
+        item.setName(c.src.substring(start, c.pos).trim());
+        c.pos++;
+
+        while (c.pos < c.end && c.src.charAt(c.pos) != ')') {
+            parseMember(item, c);
+            if (c.pos < c.end && c.src.charAt(c.pos) == ',') {
+                c.pos++;
+                c.skipSpaces();
+            } else if (c.pos < c.end && c.src.charAt(c.pos) != ')') {
+                throw c.badDescription();
             }
         }
 
-        return res;
-    }
+        // closing bracket
+        c.pos++;
 
-    private static int findCorresponding(String str, char open, char close) {
-        char[] chars = str.toCharArray();
-        int count = 0;
-        for (int i = 0; i < chars.length; i++) {
-            if (chars[i] == open) {
-                count++;
-            } else if (chars[i] == close) {
-                count--;
-                if (count == 0) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return item;
     }
 
     private static void parseAnnData(AnnotationItem item, String specificData) {
@@ -195,105 +178,158 @@ public class AnnotationParser {
         }
     }
 
+    /**
+     * Parses the member at the beginning of the given string and adds it to
+     * the item.
+     *
+     * @return the number of characters consumed
+     */
     protected int parseMember(AnnotationItem item, String str) {
+        Cursor c = new Cursor(str, 0, str.length());
+        parseMember(item, c);
+        return c.pos;
+    }
 
-        int pos, result = 0;
+    private void parseMember(AnnotationItem item, Cursor c) {
 
         AnnotationItem.Member m = new AnnotationItem.Member();
 
-        pos = str.indexOf(' ');
-
         // java.lang.Class<? extends java.util.ArrayList<? super javax.swing.JLabel>> value=class com.sun.tdk.signaturetest.model.Regtest_6564000$CL_4
-        if (str.startsWith(CLASS_PREFIX + "<")) {
+        int start = c.pos;
+        if (c.src.startsWith(CLASS_PREFIX + "<", c.pos)) {
             // skip possible spaces inside
-            char[] strChar = str.toCharArray();
             int level = 0;
-            for (int i = CLASS_PREFIX.length(); i < strChar.length; i++) {
-                if (strChar[i] == '<') {
+            for (c.pos += CLASS_PREFIX.length(); c.pos < c.end; c.pos++) {
+                char ch = c.src.charAt(c.pos);
+                if (ch == '<') {
                     level++;
-                } else if (strChar[i] == '>') {
+                } else if (ch == '>') {
                     level--;
-                }
-                if (level == 0 && strChar[i + 1] == ' ') {
-                    pos = i + 1;
+                } else if (ch == ' ' && level == 0) {
                     break;
                 }
             }
+        } else {
+            c.skipTo(' ');
         }
+        m.type = c.src.substring(start, c.pos).intern();
+        c.skipSpaces();
 
-        m.type = str.substring(0, pos);
-        str = str.substring(pos + 1).trim();
-        result += pos + 1;
-
-        pos = str.indexOf('=');
-        m.name = str.substring(0, pos);
-
-        str = str.substring(pos + 1).trim();
-        result += pos + 1;
+        start = c.pos;
+        c.skipTo('=');
+        if (c.pos >= c.end) {
+            throw c.badDescription();
+        }
+        m.name = c.src.substring(start, c.pos);
+        c.pos++;
+        c.skipSpaces();
 
-        char ch = str.charAt(0);
+        start = c.pos;
+        c.skipValue();
+        m.value = c.src.substring(start, c.pos);
 
-        switch (ch) {
-            case '[': {
-                pos = findClosingBracket(str, 1, '[', ']') + 1;
-                break;
-            }
+        item.addMember(m);
+    }
 
-            case '"':
-            case '\'': {
-                pos = str.indexOf(ch, 1) + 1;
-                break;
-            }
+    /**
+     * Position in the description being parsed.
+     */
+    private static class Cursor {
 
-            case 'a': {
-                if (str.startsWith(AnnotationItem.ANNOTATION_PREFIX)) {
-                    AnnotationItem a = parse(str);
-                    pos = a.toString().length();
-                    break;
-                }
-            }
+        final String src;
+        final int end;
+        int pos;
 
-            default: {
-                pos = str.indexOf(',');
+        Cursor(String src, int pos, int end) {
+            this.src = src;
+            this.pos = pos;
+            this.end = end;
+        }
 
-                if (pos == -1) {
-                    pos = str.indexOf(')');
-                }
+        IllegalArgumentException badDescription() {
+            return new IllegalArgumentException(i18n.getString("AnnotationParser.error.bad_annotation_descr") + src.substring(Math.min(pos, end), end));
+        }
 
-                if (pos == -1) {
-                    pos = str.length();
-                }
+        void skipTo(char ch) {
+            while (pos < end && src.charAt(pos) != ch) {
+                pos++;
             }
         }
 
-        m.value = str.substring(0, pos);
-        item.addMember(m);
+        void skipSpaces() {
+            while (pos < end && Character.isWhitespace(src.charAt(pos))) {
+                pos++;
+            }
+        }
 
-        result += pos;
-        return result;
-    }
+        /**
+         * Moves the position to the end of the member value starting at the
+         * current position.
+         */
+        void skipValue() {
+            if (pos >= end) {
+                return;
+            }
 
-    private static int findClosingBracket(String str, int startPos, char openingChar, char closingChar) {
+            char ch = src.charAt(pos);
+            switch (ch) {
+                case '[':
+                    skipBlock('[', ']');
+                    break;
 
-        int level = 0;
-        int len = str.length();
-        for (int i = startPos; i < len; ++i) {
+                case '"':
+                case '\'':
+                    skipQuoted();
+                    break;
 
-            char ch = str.charAt(i);
+                default:
+                    if (src.startsWith(AnnotationItem.ANNOTATION_PREFIX, pos)) {
+                        skipTo('(');
+                        skipBlock('(', ')');
+                        break;
+                    }
+
+                    while (pos < end) {
+                        ch = src.charAt(pos);
+                        if (ch == ',' || ch == ')') {
+                            break;
+                        }
+                        pos++;
+                    }
+            }
+        }
 
-            if (ch == openingChar) {
-                ++level;
-                continue;
+        /**
+         * Skips string or char literal. Quotes and backslashes inside literals
+         * are always escaped as unicode sequences by the writer.
+         */
+        void skipQuoted() {
+            char quote = src.charAt(pos++);
+            if (quote == '\'' && pos < end) {
+                // char literal always has one character, it may be the quote itself
+                pos++;
+            }
+            skipTo(quote);
+            if (pos < end) {
+                pos++;
             }
+        }
 
-            if (ch == closingChar) {
-                if (level == 0) {
-                    return i;
+        void skipBlock(char open, char close) {
+            int level = 0;
+            while (pos < end) {
+                char ch = src.charAt(pos);
+                if (ch == '"' || ch == '\'') {
+                    skipQuoted();
+                    continue;
+                }
+                pos++;
+                if (ch == open) {
+                    level++;
+                } else if (ch == close && --level == 0) {
+                    return;
                 }
-                --level;
             }
         }
-
-        return -1;
     }
 }
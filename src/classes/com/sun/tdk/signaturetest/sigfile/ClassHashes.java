@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.signaturetest.sigfile;
+
+import com.sun.tdk.signaturetest.model.AnnotationItem;
+import com.sun.tdk.signaturetest.model.AnnotationItemEx;
+import com.sun.tdk.signaturetest.model.MemberType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Computes content hashes of the classes stored in a signature file without
+ * parsing class descriptions. The hash of a class covers
+ * <ul>
+ * <li>the text of its own description,
+ * <li>the hashes of its superclass, superinterfaces and outer class,
+ * <li>the hierarchies of the annotation types and exceptions it refers to.
+ * </ul>
+ * So two classes with the same hash in two signature files have the same
+ * members including inherited ones and are checked the same way.
+ *
+ * @see FileManager#openSignatureFile(URL)
+ */
+public class ClassHashes {
+
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long MISSING = 0x9e3779b97f4a7c15L;
+
+    private static final String SUPER_PREFIX = MemberType.SUPERCLASS + " ";
+    private static final String INTF_PREFIX = MemberType.SUPERINTERFACE + " ";
+    private static final String THROWS = " throws ";
+
+    private final Map<String, Block> blocks = new HashMap<>();
+    private final Map<String, Long> chains = new HashMap<>();
+    private final Map<String, Long> hashes = new HashMap<>();
+    private final List<String> header = new ArrayList<>();
+
+    private static class Block {
+        long own = FNV_BASIS;
+        final List<String> supers = new ArrayList<>(4);
+        final List<String> refs = new ArrayList<>(4);
+        String outer;
+    }
+
+    /**
+     * Reads the given signature file
+     */
+    public ClassHashes(URL fileURL) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(FileManager.openSignatureFile(fileURL), StandardCharsets.UTF_8))) {
+            read(in);
+        }
+        for (String name : blocks.keySet()) {
+            getHash(name, new HashSet<String>());
+        }
+        chains.clear();
+        blocks.clear();
+    }
+
+    /**
+     * Returns the format line and features of the signature file. Classes from
+     * two signature files are comparable by hash only if these lines match.
+     */
+    public List<String> getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns hash of the given class or null if the class is not found
+     */
+    public Long getHash(String className) {
+        return hashes.get(className);
+    }
+
+    private void read(BufferedReader in) throws IOException {
+        String line;
+        Block block = null;
+        boolean inXml = false;
+        boolean inHeader = true;
+
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                block = null;
+                inXml = false;
+                continue;
+            }
+            if (line.startsWith("#")) {
+                // skip the API version and copyright text
+                if (inHeader && !line.startsWith(Format.VERSION) && !line.startsWith("# ")) {
+                    header.add(line);
+                }
+                continue;
+            }
+            inHeader = false;
+            if (inXml) {
+                continue;
+            }
+
+            if (block == null) {
+                MemberType type = MemberType.getItemType(line);
+                if (type == MemberType.MODULE) {
+                    inXml = true;
+                    continue;
+                }
+                if (type != MemberType.CLASS) {
+                    continue;
+                }
+                block = new Block();
+                String name = typeName(line, line.lastIndexOf(' ', nameEnd(line, 0) - 1) + 1);
+                int pos = name.lastIndexOf('$');
+                if (pos > 0) {
+                    block.outer = name.substring(0, pos);
+                }
+                blocks.put(name, block);
+            } else if (line.startsWith(SUPER_PREFIX)) {
+                block.supers.add(typeName(line, SUPER_PREFIX.length()));
+            } else if (line.startsWith(INTF_PREFIX)) {
+                block.supers.add(typeName(line, INTF_PREFIX.length()));
+            } else if (line.startsWith(AnnotationItem.ANNOTATION_PREFIX) || line.startsWith(AnnotationItemEx.ANNOTATION_EX_PREFIX)) {
+                int end = line.indexOf('(');
+                if (end > 0) {
+                    block.refs.add(line.substring(line.lastIndexOf(' ', end) + 1, end));
+                }
+            } else {
+                int pos = line.indexOf(THROWS);
+                if (pos > 0) {
+                    StringTokenizer st = new StringTokenizer(line.substring(pos + THROWS.length()), ",");
+                    while (st.hasMoreTokens()) {
+                        String ex = st.nextToken().trim();
+                        block.refs.add(typeName(ex, 0));
+                    }
+                }
+            }
+
+            long h = block.own;
+            for (int i = 0; i < line.length(); i++) {
+                h = (h ^ line.charAt(i)) * FNV_PRIME;
+            }
+            block.own = (h ^ '\n') * FNV_PRIME;
+        }
+    }
+
+    // end of the type name starting at the given position: first '<' or end of line
+    private static int nameEnd(String line, int start) {
+        int end = line.indexOf('<', start);
+        return end < 0 ? line.length() : end;
+    }
+
+    private static String typeName(String line, int start) {
+        return line.substring(start, nameEnd(line, start)).trim();
+    }
+
+    private static long mix(long h, long v) {
+        h = (h ^ v) * FNV_PRIME;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Hash of the class text and of its supertypes and outer classes. This
+     * relation is acyclic, the {@code path} set only protects from broken
+     * signature files.
+     */
+    private long getChain(String name, Set<String> path) {
+        Long cached = chains.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        Block b = blocks.get(name);
+        if (b == null || !path.add(name)) {
+            return MISSING;
+        }
+        long h = b.own;
+        for (String s : b.supers) {
+            h = mix(h, getChain(s, path));
+        }
+        if (b.outer != null) {
+            h = mix(h, getChain(b.outer, path));
+        }
+        path.remove(name);
+        chains.put(name, h);
+        return h;
+    }
+
+    private long getHash(String name, Set<String> path) {
+        Long cached = hashes.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        Block b = blocks.get(name);
+        if (b == null || !path.add(name)) {
+            return MISSING;
+        }
+        long h = b.own;
+        for (String r : b.refs) {
+            h = mix(h, getChain(r, new HashSet<String>()));
+        }
+        for (String s : b.supers) {
+            h = mix(h, getHash(s, path));
+        }
+        if (b.outer != null) {
+            h = mix(h, getHash(b.outer, path));
+        }
+        path.remove(name);
+        hashes.put(name, h);
+        return h;
+    }
+}
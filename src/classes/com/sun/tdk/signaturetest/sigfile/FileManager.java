@@ -31,16 +31,27 @@ import com.sun.tdk.signaturetest.sigfile.f31.F31Format;
 import com.sun.tdk.signaturetest.sigfile.f21.F21Format;
 import com.sun.tdk.signaturetest.sigfile.f43.F43Format;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @author Mikhail Ershov
@@ -49,6 +60,19 @@ public class FileManager {
 
     private static final String DEFAULT_PROTOCOL = "file:";
 
+    /**
+     * File name extension of gzip-compressed signature files
+     */
+    public static final String GZIP_EXT = ".gz";
+
+    /**
+     * File name extension of zlib (deflate) compressed signature files
+     */
+    public static final String DEFLATE_EXT = ".zz";
+
+    private static final int STREAM_BUFSIZE = 0x10000;
+    private static final int GZIP_MAGIC = 0x1f8b;
+
     public static URL getURL(String testURL, String fileName) throws MalformedURLException {
 
         URL result;
@@ -73,7 +97,7 @@ public class FileManager {
 
     private static String getFormat(URL fileURL) {
         String currentLine;
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(fileURL.openStream(), StandardCharsets.UTF_8))) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(openSignatureFile(fileURL), StandardCharsets.UTF_8))) {
             if ((currentLine = in.readLine()) == null) {
                 return null;
             }
@@ -84,6 +108,82 @@ public class FileManager {
         return currentLine;
     }
 
+    /**
+     * Opens signature file for reading. Compressed files (gzip or zlib) are
+     * recognized by their magic bytes and decompressed on the fly, so callers
+     * always get the plain signature file content.
+     */
+    public static InputStream openSignatureFile(URL fileURL) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(fileURL.openStream(), STREAM_BUFSIZE);
+        int b1;
+        int b2;
+        try {
+            in.mark(2);
+            b1 = in.read();
+            b2 = in.read();
+            in.reset();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        if (b1 < 0 || b2 < 0) {
+            return in;
+        }
+
+        int magic = (b1 << 8) | b2;
+        if (magic == GZIP_MAGIC) {
+            try {
+                return new GZIPInputStream(in, STREAM_BUFSIZE);
+            } catch (IOException e) {
+                // broken gzip header
+                in.close();
+                throw e;
+            }
+        }
+        // zlib header: CM = 8 (deflate), CINFO <= 7 and FCHECK makes it a multiple of 31
+        if ((b1 & 0x0f) == 8 && (b1 >> 4) <= 7 && magic % 31 == 0) {
+            return new InflaterInputStream(in, new Inflater(), STREAM_BUFSIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+        return in;
+    }
+
+    /**
+     * Creates signature file for writing. The output is compressed if the file
+     * name ends with {@link #GZIP_EXT} (gzip) or {@link #DEFLATE_EXT} (zlib).
+     */
+    public static OutputStream createSignatureFile(String fileName) throws IOException {
+        OutputStream out = new FileOutputStream(fileName);
+        String name = fileName.toLowerCase();
+        try {
+            if (name.endsWith(GZIP_EXT)) {
+                return new GZIPOutputStream(out, STREAM_BUFSIZE);
+            }
+            if (name.endsWith(DEFLATE_EXT)) {
+                return new DeflaterOutputStream(out, new Deflater(), STREAM_BUFSIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new BufferedOutputStream(out, STREAM_BUFSIZE);
+    }
+
     /**
      * Returns the latest Writer for format supported given set of features
      */
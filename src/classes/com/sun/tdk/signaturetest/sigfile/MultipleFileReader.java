@@ -29,6 +29,8 @@ import com.sun.tdk.signaturetest.core.context.BaseOptions;
 import com.sun.tdk.signaturetest.core.context.Option;
 import com.sun.tdk.signaturetest.loaders.VirtualClassDescriptionLoader;
 import com.sun.tdk.signaturetest.model.ClassDescription;
+import com.sun.tdk.signaturetest.model.ModuleDescription;
+import com.sun.tdk.signaturetest.sigfile.f43.F43Reader;
 import com.sun.tdk.signaturetest.toyxml.Elem;
 import com.sun.tdk.signaturetest.util.I18NResourceBundle;
 import com.sun.tdk.signaturetest.util.SwissKnife;
@@ -38,6 +40,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -56,7 +59,9 @@ public class MultipleFileReader extends VirtualClassDescriptionLoader implements
     private String apiVersion;
     private final FileManager fileMan;
     private final BaseOptions bo = AppContext.getContext().getBean(BaseOptions.class);
-    private List<Elem> elements;
+    private List<ModuleDescription> modules;
+    private Reader modulesSource;
+    private ClassUpdate update;
 
     public MultipleFileReader(PrintWriter log, int mode, FileManager f) {
         // Note: Merge mode is not supported yet.
@@ -68,6 +73,14 @@ public class MultipleFileReader extends VirtualClassDescriptionLoader implements
 
     }
 
+    /**
+     * Sets the update applied to the classes of signature files read after
+     * this call
+     */
+    public void setUpdate(ClassUpdate update) {
+        this.update = update;
+    }
+
     public boolean readSignatureFiles(String testURL, String sigFileList) {
 
         assert testURL != null;
@@ -117,6 +130,10 @@ public class MultipleFileReader extends VirtualClassDescriptionLoader implements
                 return false;
             }
 
+            if (update != null && in instanceof SignatureClassLoader) {
+                ((SignatureClassLoader) in).setUpdate(update);
+            }
+
             if (!in.readSignatureFile(fileURL)) {
                 msg = i18n.getString("MultipleFileReader.error.sigfile.invalid", fileURL);
             }
@@ -148,7 +165,8 @@ public class MultipleFileReader extends VirtualClassDescriptionLoader implements
                     assert mode == MERGE_MODE;
                 }
             }
-            elements = in.getElems();
+            modules = in instanceof ModuleReader ? ((ModuleReader) in).getModules() : toModules(in.getElems());
+            modulesSource = in;
         } catch (IOException e) {
             if (bo.isSet(Option.DEBUG)) {
                 SwissKnife.reportThrowable(e);
@@ -179,8 +197,30 @@ public class MultipleFileReader extends VirtualClassDescriptionLoader implements
         classIterator = getClassIterator();
     }
 
+    public List<ModuleDescription> getModules() {
+        return modules;
+    }
+
+    private static List<ModuleDescription> toModules(List<Elem> elems) {
+        if (elems == null) {
+            return null;
+        }
+        List<ModuleDescription> mds = new ArrayList<>();
+        for (Elem m : elems) {
+            ModuleDescription md = F43Reader.fromTDom(m);
+            if (md != null) {
+                mds.add(md);
+            }
+        }
+        return mds;
+    }
+
+    /**
+     * @deprecated use {@link #getModules()}
+     */
+    @Deprecated
     public List<Elem> getElements() {
-        return elements;
+        return modulesSource == null ? null : modulesSource.getElems();
     }
 
     public ClassDescription nextClass() throws IOException {
@@ -26,6 +26,8 @@ package com.sun.tdk.signaturetest.sigfile;
 
 import com.sun.tdk.signaturetest.model.ClassDescription;
 import com.sun.tdk.signaturetest.model.MemberType;
+import com.sun.tdk.signaturetest.model.ModuleDescription;
+import com.sun.tdk.signaturetest.sigfile.f43.F43Reader;
 import com.sun.tdk.signaturetest.toyxml.Elem;
 
 import java.io.BufferedReader;
@@ -44,14 +46,19 @@ import java.util.*;
  * @version 05/09/09
  * @see ClassDescription
  */
-public abstract class SignatureClassLoader implements Reader {
+public abstract class SignatureClassLoader implements ModuleReader {
 
     protected final Format format;
     protected final Set<FeaturesHolder.Feature> features;
     private BufferedReader in;
     private final Parser parser;
     private static final int BUFSIZE = 0x8000;
-    private final List<Elem> elems;
+    private final List<ModuleDescription> modules;
+    private final List<String> xmlFragments;
+    private ClassUpdate update;
+    // updated classes not returned yet
+    private final Deque<List<String>> updated = new ArrayDeque<>();
+    private boolean addedClasses;
     /**
      * API version found in {@code this} signature file.
      */
@@ -65,7 +72,8 @@ public abstract class SignatureClassLoader implements Reader {
         this.format = format;
         features = format.getSupportedFeatures();
         parser = getParser();
-        elems = new ArrayList<>();
+        modules = new ArrayList<>();
+        xmlFragments = new ArrayList<>();
     }
 
     protected abstract Parser getParser();
@@ -83,6 +91,13 @@ public abstract class SignatureClassLoader implements Reader {
         in.close();
     }
 
+    /**
+     * Sets the update applied to the classes while they are read
+     */
+    public void setUpdate(ClassUpdate update) {
+        this.update = update;
+    }
+
     /**
      * Return the next {@code SigFileClassDescription} read from
      * {@code this} signature file.
@@ -91,9 +106,37 @@ public abstract class SignatureClassLoader implements Reader {
      */
     public ClassDescription readNextClass() throws IOException {
 
+        List<String> definitions;
+        String classDescr;
+
+        if (update != null) {
+            definitions = nextUpdatedClass();
+            if (definitions == null) {
+                return null;
+            }
+            classDescr = definitions.remove(0);
+        } else {
+            definitions = new ArrayList<>();
+            classDescr = readDefinitions(definitions);
+            if (classDescr == null && definitions.isEmpty()) {
+                return null;
+            }
+        }
+
+        classDescr = convertClassDescr(classDescr);
+        definitions = convertClassDefinitions(definitions);
+
+        return parser.parseClassDescription(classDescr, definitions);
+    }
+
+    /**
+     * Reads lines of the next class, returns the class header or null if
+     * there are no more classes
+     */
+    private String readDefinitions(List<String> definitions) throws IOException {
+
         String currentLine;
         String classDescr = null;
-        List<String> definitions = new ArrayList<>();
 
         for (; ; ) {
             in.mark(BUFSIZE);
@@ -126,17 +169,47 @@ public abstract class SignatureClassLoader implements Reader {
         }
         in.reset();
 
-        if (classDescr == null && definitions.isEmpty()) {
-            return null;
-        }
+        return classDescr;
+    }
 
-        classDescr = convertClassDescr(classDescr);
-        definitions = convertClassDefinitions(definitions);
+    /**
+     * Returns lines of the next class produced by the update from the
+     * classes of the file, then of the added classes. Returns null if there
+     * are no more classes.
+     */
+    private List<String> nextUpdatedClass() throws IOException {
+        while (updated.isEmpty()) {
+            List<String> definitions = new ArrayList<>();
+            String classDescr = readDefinitions(definitions);
+            if (classDescr != null) {
+                definitions.add(0, classDescr);
+                updated.addAll(update.update(definitions));
+            } else if (!addedClasses) {
+                addedClasses = true;
+                updated.addAll(update.getAddedClasses());
+            } else {
+                return null;
+            }
+        }
+        return new ArrayList<>(updated.poll());
+    }
 
-        return parser.parseClassDescription(classDescr, definitions);
+    public List<ModuleDescription> getModules() {
+        return modules;
     }
 
+    /**
+     * @deprecated use {@link #getModules()}
+     */
+    @Deprecated
     public List<Elem> getElems() {
+        List<Elem> elems = new ArrayList<>();
+        for (String s : xmlFragments) {
+            Elem e = processXMLFragment(s);
+            if (e != null) {
+                elems.add(e);
+            }
+        }
         return elems;
     }
 
@@ -152,12 +225,27 @@ public abstract class SignatureClassLoader implements Reader {
             xmlTxt.append(line);
             line = in.readLine();
         }
-        Elem d = processXMLFragment(xmlTxt.toString());
+        String xml = xmlTxt.toString();
+        xmlFragments.add(xml);
+        ModuleDescription d = processModuleFragment(xml);
         if (d != null) {
-            elems.add(d);
+            modules.add(d);
         }
     }
 
+    /**
+     * Readers which override only the deprecated
+     * {@link #processXMLFragment(String)} get the module from its element.
+     */
+    protected ModuleDescription processModuleFragment(String s) {
+        Elem e = processXMLFragment(s);
+        return e == null ? null : F43Reader.fromTDom(e);
+    }
+
+    /**
+     * @deprecated use {@link #processModuleFragment(String)}
+     */
+    @Deprecated
     protected Elem processXMLFragment(String s) {
         return null;
     }
@@ -175,7 +263,7 @@ public abstract class SignatureClassLoader implements Reader {
      * fields
      */
     public boolean readSignatureFile(URL fileURL) throws IOException {
-        in = new BufferedReader(new InputStreamReader(fileURL.openStream(), StandardCharsets.UTF_8), BUFSIZE);
+        in = new BufferedReader(new InputStreamReader(FileManager.openSignatureFile(fileURL), StandardCharsets.UTF_8), BUFSIZE);
         assert in.markSupported();
         return readHeaders(in);
     }
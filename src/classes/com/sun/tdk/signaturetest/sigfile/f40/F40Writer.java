@@ -43,7 +43,14 @@ public class F40Writer implements Writer {
     private boolean isConstantValuesSaved = true;
     private String apiVersion;
     private final StringBuffer buf = new StringBuffer(512);
-    private final List<String> members = new ArrayList<>();
+    // all accepted members of the current class are rendered one after
+    // another into membersBuf, memberBounds[i]..memberBounds[i + 1] is the
+    // text of i-th member
+    private final StringBuffer membersBuf = new StringBuffer(0x4000);
+    private int[] memberBounds = new int[65];
+    private int[] order = new int[64];
+    private int[] sortTmp = new int[64];
+    private char[] chars = new char[512];
 
     public F40Writer() {
         setFormat(new F40Format());
@@ -98,11 +105,11 @@ public class F40Writer implements Writer {
     public void write(ClassDescription classDescription) {
 
         buf.setLength(0);
-        members.clear();
+        membersBuf.setLength(0);
+        int count = 0;
 
         String clsName = classDescription.getQualifiedName();
 
-        // sorts members
         for (Iterator<MemberDescription> e = classDescription.getMembersIterator(); e.hasNext(); ) {
 
             MemberDescription mr = e.next();
@@ -111,20 +118,25 @@ public class F40Writer implements Writer {
                 continue;
             }
 
-            write(buf, mr);
-            members.add(buf.toString());
-            buf.setLength(0);
+            if (count + 1 >= memberBounds.length) {
+                memberBounds = Arrays.copyOf(memberBounds, memberBounds.length * 2);
+            }
+            memberBounds[count] = membersBuf.length();
+            write(membersBuf, mr);
+            count++;
         }
+        memberBounds[count] = membersBuf.length();
 
-        Collections.sort(members);
+        // sorts members
+        sortMembers(count);
 
         // print class description
         write(buf, classDescription);
-        out.println(buf.toString());
+        println(buf, 0, buf.length());
 
-        int size = members.size();
-        for (String member : members) {
-            out.println(member);
+        for (int i = 0; i < count; i++) {
+            int m = order[i];
+            println(membersBuf, memberBounds[m], memberBounds[m + 1]);
         }
 
         if (getFormat().isFeatureSupported(FeaturesHolder.ListOfHiders)) {
@@ -132,7 +144,80 @@ public class F40Writer implements Writer {
         }
 
         // write empty string
-        out.println("");
+        out.println();
+    }
+
+    private void println(StringBuffer sb, int start, int end) {
+        int len = end - start;
+        if (chars.length < len) {
+            chars = new char[Math.max(len, chars.length * 2)];
+        }
+        sb.getChars(start, end, chars, 0);
+        out.write(chars, 0, len);
+        out.println();
+    }
+
+    /**
+     * Sorts indexes of the members rendered to membersBuf in the order of
+     * their text, the same order as {@code Collections.sort} gives for the
+     * corresponding strings.
+     */
+    private void sortMembers(int count) {
+        if (order.length < count) {
+            order = new int[memberBounds.length];
+            sortTmp = new int[memberBounds.length];
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        mergeSort(0, count);
+    }
+
+    private void mergeSort(int from, int to) {
+        int len = to - from;
+        if (len < 8) {
+            for (int i = from + 1; i < to; i++) {
+                int m = order[i];
+                int j = i;
+                while (j > from && compareMembers(order[j - 1], m) > 0) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = m;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        if (compareMembers(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, sortTmp, from, len);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compareMembers(sortTmp[i], sortTmp[j]) <= 0)) {
+                order[k] = sortTmp[i++];
+            } else {
+                order[k] = sortTmp[j++];
+            }
+        }
+    }
+
+    private int compareMembers(int m1, int m2) {
+        int p1 = memberBounds[m1];
+        int end1 = memberBounds[m1 + 1];
+        int p2 = memberBounds[m2];
+        int end2 = memberBounds[m2 + 1];
+        while (p1 < end1 && p2 < end2) {
+            char c1 = membersBuf.charAt(p1++);
+            char c2 = membersBuf.charAt(p2++);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return (end1 - p1) - (end2 - p2);
     }
 
     protected boolean isMemberAccepted(MemberDescription mr, String clsName) {
@@ -182,12 +267,7 @@ public class F40Writer implements Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         buf.append(' ');
         buf.append(m.getQualifiedName());
@@ -211,7 +291,7 @@ public class F40Writer implements Writer {
         AnnotationItem[] annoList = m.getAnnoList();
         for (AnnotationItem annotationItem : annoList) {
             buf.append("\n ");
-            buf.append(annotationItem);
+            annotationItem.appendTo(buf);
         }
     }
 
@@ -220,12 +300,7 @@ public class F40Writer implements Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         String typeParameters = m.getTypeParameters();
 
@@ -262,12 +337,7 @@ public class F40Writer implements Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         String typeParameters = m.getTypeParameters();
 
@@ -301,12 +371,7 @@ public class F40Writer implements Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         String type = m.getType();
 
@@ -340,12 +405,7 @@ public class F40Writer implements Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         buf.append(' ');
         buf.append(m.getName());
@@ -383,31 +443,26 @@ public class F40Writer implements Writer {
 
     protected void writeInternalMembers(StringBuffer buf, String prefix, Set<String> internalMembers) {
 
+        if (internalMembers.isEmpty()) {
+            return;
+        }
+
         // sort members
-        List<String> intMembers = new ArrayList<>(internalMembers);
-        Collections.sort(intMembers);
+        String[] intMembers = internalMembers.toArray(new String[0]);
+        Arrays.sort(intMembers);
 
         buf.setLength(0);
 
         buf.append(prefix);
-        buf.append(" ");
-        int count = 0;
-        for (String intMember : intMembers) {
-            if (count != 0) {
+        buf.append(' ');
+        for (int i = 0; i < intMembers.length; i++) {
+            if (i != 0) {
                 buf.append(',');
             }
-            buf.append(intMember);
-            count++;
-        }
-
-        if (count == 0) {
-            buf.setLength(0);
-        }
-
-        if (buf.length() > 0) {
-            out.println(buf);
+            buf.append(intMembers[i]);
         }
 
+        println(buf, 0, buf.length());
     }
 
     @Override
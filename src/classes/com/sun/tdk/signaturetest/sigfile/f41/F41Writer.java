@@ -25,7 +25,6 @@
 package com.sun.tdk.signaturetest.sigfile.f41;
 
 import com.sun.tdk.signaturetest.sigfile.f40.F40Writer;
-import com.sun.tdk.signaturetest.model.AnnotationItem;
 import com.sun.tdk.signaturetest.model.ClassDescription;
 import com.sun.tdk.signaturetest.model.MemberDescription;
 import com.sun.tdk.signaturetest.model.MemberType;
@@ -48,12 +47,7 @@ public class F41Writer extends F40Writer {
         MemberType memberType = m.getMemberType();
 
         buf.append(memberType);
-
-        String modifiers = Modifier.toString(memberType, m.getModifiers(), true);
-        if (!modifiers.isEmpty()) {
-            buf.append(' ');
-            buf.append(modifiers);
-        }
+        Modifier.appendTo(buf, memberType, m.getModifiers(), true);
 
         buf.append(' ');
         buf.append(m.getQualifiedName());
@@ -66,14 +60,10 @@ public class F41Writer extends F40Writer {
 
         if (m.getOuterClass() != null
                 && !m.getOuterClass().equals(MemberDescription.NO_DECLARING_CLASS)) {
-            buf.append("\n " + ClassDescription.OUTER_PREFIX + " ");
+            buf.append("\n ").append(ClassDescription.OUTER_PREFIX).append(' ');
             buf.append(m.getOuterClass());
         }
 
-        AnnotationItem[] annoList = m.getAnnoList();
-        for (AnnotationItem annotationItem : annoList) {
-            buf.append("\n ");
-            buf.append(annotationItem);
-        }
+        addAnnotations(buf, m);
     }
 }
@@ -31,6 +31,7 @@ import com.sun.tdk.signaturetest.sigfile.Parser;
 import com.sun.tdk.signaturetest.sigfile.f42.F42Reader;
 import com.sun.tdk.signaturetest.toyxml.Elem;
 import com.sun.tdk.signaturetest.toyxml.ToyParser;
+import com.sun.tdk.signaturetest.toyxml.ToyTokenizer;
 
 import java.util.*;
 
@@ -39,20 +40,173 @@ import static com.sun.tdk.signaturetest.sigfile.f43.F43Format.*;
 
 public class F43Reader extends F42Reader {
 
+    // subclass still builds modules with the deprecated processXMLFragment
+    private final boolean xmlFragments = overridesXMLFragment(getClass());
+
     public F43Reader(Format format) {
         super(format);
     }
 
+    private static boolean overridesXMLFragment(Class<?> c) {
+        for (; c != F43Reader.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("processXMLFragment", String.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look at the superclass
+            }
+        }
+        return false;
+    }
+
     protected Parser getParser() {
         return new F43Parser();
     }
 
+    @Override
+    protected ModuleDescription processModuleFragment(String line) {
+        return xmlFragments ? super.processModuleFragment(line) : readModule(line);
+    }
+
+    /**
+     * @deprecated use {@link #processModuleFragment(String)}
+     */
+    @Deprecated
     @Override
     protected Elem processXMLFragment(String line) {
         ToyParser p = new ToyParser();
         return p.parse(line);
     }
 
+    /**
+     * Builds module description from the module XML fragment in one pass
+     * over the tokens of the fragment.
+     */
+    public static ModuleDescription readModule(String xml) {
+        ToyTokenizer t = new ToyTokenizer(xml);
+
+        ToyTokenizer.Token tok = t.next();
+        if (tok == ToyTokenizer.Token.EOF) {
+            return null;
+        }
+        if (tok != ToyTokenizer.Token.START || !MODULE.equals(t.getName())) {
+            throw new IllegalStateException(xml);
+        }
+
+        ModuleDescription md = new ModuleDescription();
+        {
+            String name = t.getAttribute(NAME);
+            if (name != null && !name.isEmpty()) {
+                md.setName(name);
+            }
+        }
+        {
+            String features = t.getAttribute(FEATURES);
+            if (features == null) {
+                features = "";
+            }
+            md.setFeatures(featureSetFromCommaList(features));
+        }
+        {
+            String version = t.getAttribute(VERSION);
+            if (version != null && !version.isEmpty()) {
+                md.setVersion(version);
+            }
+        }
+        {
+            String mainC = t.getAttribute(MAIN_CLASS);
+            if (mainC != null && !mainC.isEmpty()) {
+                md.setMainClass(mainC);
+            }
+        }
+
+        Set<String> pkSet = new HashSet<>();
+        Set<ModuleDescription.Exports> exSet = new HashSet<>();
+        Set<ModuleDescription.Requires> rqSet = new HashSet<>();
+        Map<String, ModuleDescription.Provides> prMap = new HashMap<>();
+        Set<String> usSet = new HashSet<>();
+
+        // innermost open exports or provides element
+        ModuleDescription.Exports export = null;
+        ModuleDescription.Provides pr = null;
+        int depth = 1;
+
+        while (depth > 0 && (tok = t.next()) != ToyTokenizer.Token.EOF) {
+            String el = t.getName();
+            if (tok == ToyTokenizer.Token.END) {
+                depth--;
+                if (EXPORTS.equals(el) && export != null) {
+                    // targets are known now, so the export can be hashed
+                    exSet.add(export);
+                    export = null;
+                } else if (PROVIDES.equals(el)) {
+                    pr = null;
+                }
+                continue;
+            }
+            depth++;
+            switch (el) {
+                case PACKAGE: {
+                    String pkgName = t.getAttribute(NAME);
+                    if (!pkgName.isEmpty()) {
+                        pkSet.add(pkgName);
+                    }
+                    break;
+                }
+                case EXPORTS:
+                    export = new ModuleDescription.Exports();
+                    export.source = t.getAttribute(SOURCE);
+                    export.targets = new HashSet<>();
+                    break;
+                case TARGET:
+                    if (export != null) {
+                        export.targets.add(t.getAttribute(NAME));
+                    }
+                    break;
+                case REQUIRES: {
+                    ModuleDescription.Requires rq = new ModuleDescription.Requires();
+                    rq.name = t.getAttribute(NAME);
+                    Set<ModuleDescription.Requires.Modifier> ms = EnumSet.noneOf(ModuleDescription.Requires.Modifier.class);
+                    for (ModuleDescription.Requires.Modifier m : ModuleDescription.Requires.Modifier.values()) {
+                        if (TRUE.equals(t.getAttribute(m.name().toLowerCase()))) {
+                            ms.add(m);
+                        }
+                    }
+                    rq.modifiers = ms;
+                    rqSet.add(rq);
+                    break;
+                }
+                case PROVIDES:
+                    pr = new ModuleDescription.Provides();
+                    pr.service = t.getAttribute(SERVICE);
+                    pr.providers = new HashSet<>();
+                    prMap.put(pr.service, pr);
+                    break;
+                case PROVIDER:
+                    if (pr != null) {
+                        pr.providers.add(t.getAttribute(NAME));
+                    }
+                    break;
+                case USES:
+                    usSet.add(t.getAttribute(NAME));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        md.setPackages(pkSet);
+        md.setExports(exSet);
+        md.setRequires(rqSet);
+        md.setProvides(prMap);
+        md.setUses(usSet);
+        return md;
+    }
+
+    /**
+     * @deprecated use {@link #readModule(String)}
+     */
+    @Deprecated
     public static ModuleDescription fromTDom(Elem m) {
         ModuleDescription md = new ModuleDescription();
         {
@@ -29,6 +29,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.TreeMap;
 
+/**
+ * @deprecated module descriptions are read by {@link ToyTokenizer} directly,
+ * see {@code F43Reader.readModule(String)}
+ */
+@Deprecated
 public class Elem {
     private String nodeName;
     private final TreeMap<String, String> attributes = new TreeMap<>();
@@ -22,113 +22,50 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-
 package com.sun.tdk.signaturetest.toyxml;
 
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static com.sun.tdk.signaturetest.toyxml.ToyParser.Kind.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
+/**
+ * Builds {@link Elem} tree from the tokens reported by {@link ToyTokenizer}.
+ *
+ * @deprecated module descriptions are read by {@link ToyTokenizer} directly,
+ * see {@code F43Reader.readModule(String)}
+ */
+@Deprecated
 public class ToyParser {
 
-    private static final Pattern elm = Pattern.compile("<.+?>");
-    private static final Pattern single = Pattern.compile("<(.+)/>");
-    private static final Pattern close = Pattern.compile("</(.+)>");
-    private static final Pattern open = Pattern.compile("<(.+)>");
-    private static final Pattern name = Pattern.compile("\\w+\\s");
-    private static final Pattern attrs = Pattern.compile("(\\w+=\"[^\"]+?\")+");
-    private static final Pattern attrMask = Pattern.compile("(\\w+)=\"(.+)\"");
     private Elem root = null;
 
     public Elem parse(String in) {
         assert in != null && !in.isEmpty();
-        Matcher matcher = elm.matcher(in);
-        Stack<Elem> stack = new Stack<>();
-        while (matcher.find()) {
-            String el = matcher.group();
-            Kind k = getLexKind(el);
-            if (k == OPEN) {
-                openElement(el, stack);
-            } else if (k == SINGLE) {
-                singleElement(el, stack);
-            } else if (k == CLOSE) {
-                closeElement(el, stack);
-            }
-        }
-
-        return root;
-    }
-
-    private static void closeElement(String def, Stack<Elem> stack) {
-        Elem e = stack.peek();
-        Matcher m = close.matcher(def);
-        if (m.find()) {
-            if (m.group(1).equals(e.getNodeName())) {
+        ToyTokenizer t = new ToyTokenizer(in);
+        Deque<Elem> stack = new ArrayDeque<>();
+        ToyTokenizer.Token tok;
+        while ((tok = t.next()) != ToyTokenizer.Token.EOF) {
+            if (tok == ToyTokenizer.Token.START) {
+                Elem el = new Elem();
+                el.setNodeName(t.getName());
+                for (int i = 0; i < t.getAttributeCount(); i++) {
+                    String val = t.getAttributeValue(i);
+                    if (!val.isEmpty()) {
+                        el.addAttribute(t.getAttributeName(i), val);
+                    }
+                }
+                if (root == null) {
+                    root = el;
+                }
+                Elem parent = stack.peek();
+                if (parent != null) {
+                    parent.addChild(el);
+                }
+                stack.push(el);
+            } else if (!stack.isEmpty() && t.getName().equals(stack.peek().getNodeName())) {
                 stack.pop();
-                return;
             }
         }
-    }
-
-    private void singleElement(String def, Stack<Elem> stack) {
-        addElement(def, stack, single, false);
-    }
 
-    private void openElement(String def, Stack<Elem> stack) {
-        addElement(def, stack, open, true);
-    }
-
-    private void addElement(String def, Stack<Elem> stack, Pattern pat, boolean add) {
-        Elem el = new Elem();
-        if (root == null) {
-            root = el;
-        }
-        Matcher m = pat.matcher(def);
-        if (m.find()) {
-            makeElem(el, m.group(1));
-        }
-        Elem parent = stack.isEmpty() ? null : stack.peek();
-        if (parent != null) {
-            parent.addChild(el);
-        }
-        if (add) {
-            stack.push(el);
-        }
-    }
-
-    private static void makeElem(Elem el, String txt) {
-
-        Matcher mn = name.matcher(txt);
-        if (mn.find()) {
-            el.setNodeName(mn.group().trim());
-        } else {
-            throw new IllegalStateException(txt);
-        }
-
-        Matcher ma = attrs.matcher(txt);
-        while (ma.find()) {
-            String attrSt = ma.group();
-            Matcher m = attrMask.matcher(attrSt);
-            if (m.find()) {
-                el.addAttribute(m.group(1), m.group(2));
-            }
-        }
-    }
-
-    private static Kind getLexKind(String el) {
-        if (close.matcher(el).find()) {
-            return CLOSE;
-        }
-        if (single.matcher(el).find()) {
-            return SINGLE;
-        }
-        if (open.matcher(el).find()) {
-            return OPEN;
-        }
-        throw new IllegalArgumentException(el);
+        return root;
     }
-
-    enum Kind {SINGLE, OPEN, CLOSE}
 }
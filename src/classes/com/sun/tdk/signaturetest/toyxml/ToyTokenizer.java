@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016, 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tdk.signaturetest.toyxml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal pull tokenizer for the XML fragments stored in signature files.
+ * It reports element starts and ends in document order without building a
+ * tree. Empty elements ({@code <a/>}) are reported as a start immediately
+ * followed by an end. Comments, processing instructions and text content
+ * are skipped.
+ */
+public class ToyTokenizer {
+
+    public enum Token {START, END, EOF}
+
+    private final String in;
+    private final int len;
+    private int pos;
+    private String name;
+    private boolean pendingEnd;
+    private final List<String> attrNames = new ArrayList<>();
+    private final List<String> attrValues = new ArrayList<>();
+
+    public ToyTokenizer(String in) {
+        assert in != null;
+        this.in = in;
+        len = in.length();
+    }
+
+    public Token next() {
+        attrNames.clear();
+        attrValues.clear();
+
+        if (pendingEnd) {
+            pendingEnd = false;
+            return Token.END;
+        }
+
+        for (; ; ) {
+            pos = in.indexOf('<', pos);
+            if (pos < 0) {
+                pos = len;
+                name = null;
+                return Token.EOF;
+            }
+            pos++;
+            if (pos >= len) {
+                throw error();
+            }
+            char ch = in.charAt(pos);
+            if (ch == '?' || ch == '!') {
+                skipPast(ch == '!' && in.startsWith("!--", pos) ? "-->" : ">");
+                continue;
+            }
+            if (ch == '/') {
+                pos++;
+                name = readName();
+                skipSpaces();
+                expect('>');
+                return Token.END;
+            }
+            name = readName();
+            readAttributes();
+            return Token.START;
+        }
+    }
+
+    /**
+     * Returns the name of the element started or ended by the last token
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value of the given attribute of the element started by the
+     * last token or null if there is no such attribute
+     */
+    public String getAttribute(String attrName) {
+        for (int i = 0; i < attrNames.size(); i++) {
+            if (attrNames.get(i).equals(attrName)) {
+                return attrValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of attributes of the element started by the last
+     * token
+     */
+    public int getAttributeCount() {
+        return attrNames.size();
+    }
+
+    public String getAttributeName(int i) {
+        return attrNames.get(i);
+    }
+
+    public String getAttributeValue(int i) {
+        return attrValues.get(i);
+    }
+
+    private void readAttributes() {
+        for (; ; ) {
+            skipSpaces();
+            if (pos >= len) {
+                throw error();
+            }
+            char ch = in.charAt(pos);
+            if (ch == '>') {
+                pos++;
+                return;
+            }
+            if (ch == '/') {
+                pos++;
+                expect('>');
+                pendingEnd = true;
+                return;
+            }
+            String attrName = readName();
+            skipSpaces();
+            expect('=');
+            skipSpaces();
+            if (pos >= len) {
+                throw error();
+            }
+            char quote = in.charAt(pos++);
+            if (quote != '"' && quote != '\'') {
+                throw error();
+            }
+            int end = in.indexOf(quote, pos);
+            if (end < 0) {
+                throw error();
+            }
+            attrNames.add(attrName);
+            attrValues.add(unescape(in, pos, end));
+            pos = end + 1;
+        }
+    }
+
+    private String readName() {
+        int start = pos;
+        while (pos < len) {
+            char ch = in.charAt(pos);
+            if (Character.isWhitespace(ch) || ch == '>' || ch == '/' || ch == '=') {
+                break;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw error();
+        }
+        return in.substring(start, pos);
+    }
+
+    private void skipSpaces() {
+        while (pos < len && Character.isWhitespace(in.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private void skipPast(String s) {
+        int end = in.indexOf(s, pos);
+        if (end < 0) {
+            throw error();
+        }
+        pos = end + s.length();
+    }
+
+    private void expect(char ch) {
+        if (pos >= len || in.charAt(pos) != ch) {
+            throw error();
+        }
+        pos++;
+    }
+
+    private IllegalStateException error() {
+        return new IllegalStateException(in.substring(0, Math.min(pos, len)));
+    }
+
+    private static String unescape(String s, int start, int end) {
+        int amp = s.indexOf('&', start);
+        if (amp < 0 || amp >= end) {
+            return s.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char ch = s.charAt(i);
+            int semi;
+            if (ch == '&' && (semi = s.indexOf(';', i)) > 0 && semi < end) {
+                String ent = s.substring(i + 1, semi);
+                i = semi + 1;
+                switch (ent) {
+                    case "amp":
+                        sb.append('&');
+                        break;
+                    case "lt":
+                        sb.append('<');
+                        break;
+                    case "gt":
+                        sb.append('>');
+                        break;
+                    case "quot":
+                        sb.append('"');
+                        break;
+                    case "apos":
+                        sb.append('\'');
+                        break;
+                    default:
+                        if (ent.startsWith("#x")) {
+                            sb.append((char) Integer.parseInt(ent.substring(2), 16));
+                        } else if (ent.startsWith("#")) {
+                            sb.append((char) Integer.parseInt(ent.substring(1)));
+                        } else {
+                            sb.append('&').append(ent).append(';');
+                        }
+                }
+            } else {
+                sb.append(ch);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
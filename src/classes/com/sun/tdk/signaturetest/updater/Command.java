@@ -33,16 +33,34 @@ abstract class Command {
 
     String id;
     String comments;
+    // position in the update file
+    int index;
     protected PrintWriter log;
+    private boolean traced;
 
     abstract boolean perform(Updater.SigList sl);
 
     abstract void validate() throws IllegalArgumentException;
 
+    /**
+     * Returns the name of the class changed by the command or null if the
+     * command is not bound to a single class
+     */
+    abstract String getClassName();
+
+    /**
+     * Returns true if the command changes the given class
+     */
+    boolean appliesTo(String className) {
+        return className.equals(getClassName());
+    }
+
     protected void trace() {
-        if (id != null && !id.isEmpty()) {
+        // a command can be performed for every class it applies to
+        if (!traced && id != null && !id.isEmpty()) {
             log.println("Applying " + id);
         }
+        traced = true;
     }
 }
 
@@ -65,6 +83,10 @@ class RemoveClass extends Command {
         }
     }
 
+    String getClassName() {
+        return className;
+    }
+
     void validate() throws IllegalArgumentException {
         if (className == null || className.isEmpty()) {
             throw new IllegalArgumentException("Class name should be specified");
@@ -92,6 +114,10 @@ class RemoveMember extends Command {
         }
     }
 
+    String getClassName() {
+        return className;
+    }
+
     void validate() throws IllegalArgumentException {
         if (className == null || className.isEmpty()) {
             throw new IllegalArgumentException("Class name should be specified");
@@ -121,6 +147,10 @@ class AddMember extends Command {
         }
     }
 
+    String getClassName() {
+        return className;
+    }
+
     void validate() throws IllegalArgumentException {
         if (className == null || className.isEmpty()) {
             throw new IllegalArgumentException("Class name should be specified");
@@ -152,6 +182,10 @@ class ChangeMember extends Command {
         }
     }
 
+    String getClassName() {
+        return className;
+    }
+
     void validate() throws IllegalArgumentException {
         if (className == null || className.isEmpty()) {
             throw new IllegalArgumentException("Class name should be specified");
@@ -186,6 +220,10 @@ class AddClass extends Command {
         }
     }
 
+    String getClassName() {
+        return className;
+    }
+
     void validate() throws IllegalArgumentException {
         if (className == null || className.isEmpty()) {
             throw new IllegalArgumentException("Class name should be specified");
@@ -206,12 +244,18 @@ class RemovePackage extends Command {
 
     boolean perform(Updater.SigList sl) {
         trace();
-        while (sl.findPackageMember(packageName)) {
-            sl.removeCurrentClass();
-        }
+        sl.removePackage(packageName);
         return true;
     }
 
+    String getClassName() {
+        return null;
+    }
+
+    boolean appliesTo(String className) {
+        return className.startsWith(packageName + ".");
+    }
+
     void validate() throws IllegalArgumentException {
         if (packageName == null || packageName.isEmpty()) {
             throw new IllegalArgumentException("Package name should be specified");
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.tdk.signaturetest.updater;
+
+import com.sun.tdk.signaturetest.sigfile.ClassUpdate;
+
+import java.util.*;
+
+/**
+ * Update file applied to the classes one at a time while a signature file
+ * is read. Commands are grouped by the class they change and performed in
+ * the update file order, package commands are checked against every class.
+ */
+class SigFileUpdate implements ClassUpdate {
+
+    private final Map<String, List<Command>> byClass = new LinkedHashMap<>();
+    private final List<Command> packageCommands = new ArrayList<>();
+    private final Set<String> seen = new HashSet<>();
+
+    SigFileUpdate(Collection<Command> commands) {
+        for (Command c : commands) {
+            String name = c.getClassName();
+            if (name == null) {
+                packageCommands.add(c);
+            } else {
+                List<Command> l = byClass.get(name);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    byClass.put(name, l);
+                }
+                l.add(c);
+            }
+        }
+    }
+
+    public synchronized List<List<String>> update(List<String> definitions) {
+        String name = Updater.SigList.getClassName(definitions.get(0));
+        seen.add(name);
+        List<Command> commands = getCommands(name);
+        if (commands.isEmpty()) {
+            return Collections.singletonList(definitions);
+        }
+        Updater.SigList sl = new Updater.SigList();
+        for (String s : definitions) {
+            sl.add(s);
+        }
+        return apply(commands, sl);
+    }
+
+    public synchronized List<List<String>> getAddedClasses() {
+        List<List<String>> result = new ArrayList<>();
+        for (String name : byClass.keySet()) {
+            if (!seen.contains(name)) {
+                result.addAll(apply(getCommands(name), new Updater.SigList()));
+            }
+        }
+        return result;
+    }
+
+    private List<Command> getCommands(String className) {
+        List<Command> own = byClass.get(className);
+        List<Command> result = own == null ? new ArrayList<Command>() : new ArrayList<>(own);
+        boolean merge = false;
+        for (Command c : packageCommands) {
+            if (c.appliesTo(className)) {
+                result.add(c);
+                merge = true;
+            }
+        }
+        if (merge) {
+            Collections.sort(result, new Comparator<Command>() {
+                public int compare(Command c1, Command c2) {
+                    return c1.index - c2.index;
+                }
+            });
+        }
+        return result;
+    }
+
+    // all the classes left, an added class body may define several classes
+    private static List<List<String>> apply(List<Command> commands, Updater.SigList sl) {
+        for (Command c : commands) {
+            c.perform(sl);
+        }
+        return sl.getClasses();
+    }
+}
@@ -36,6 +36,8 @@ import java.io.*;
 import java.lang.reflect.Field;
 
 import com.sun.tdk.signaturetest.model.AnnotationItem;
+import com.sun.tdk.signaturetest.sigfile.ClassUpdate;
+import com.sun.tdk.signaturetest.sigfile.FileManager;
 import com.sun.tdk.signaturetest.util.SwissKnife;
 
 /**
@@ -52,12 +54,8 @@ public class Updater extends DefaultHandler {
         if (log != null) {
             this.log = log;
         }
-        SAXParserFactory spf = SAXParserFactory.newInstance();
         try {
-            SAXParser sp = spf.newSAXParser();
-            sp.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            sp.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-            sp.parse(updFile, this);
+            parse(updFile);
             return applyUpdate(fromFile, toFile);
         } catch (Exception e) {
             SwissKnife.reportThrowable(e);
@@ -65,6 +63,34 @@ public class Updater extends DefaultHandler {
         }
     }
 
+    /**
+     * Reads the update file. The returned update is applied to the classes
+     * while a signature file is read, so no updated copy of the file is
+     * created. Returns null if the update file can't be read.
+     *
+     * @see com.sun.tdk.signaturetest.sigfile.MultipleFileReader#setUpdate(ClassUpdate)
+     */
+    public ClassUpdate readUpdate(String updFile, PrintWriter log) {
+        if (log != null) {
+            this.log = log;
+        }
+        try {
+            parse(updFile);
+            return new SigFileUpdate(commands);
+        } catch (Exception e) {
+            SwissKnife.reportThrowable(e);
+            return null;
+        }
+    }
+
+    private void parse(String updFile) throws Exception {
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        SAXParser sp = spf.newSAXParser();
+        sp.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        sp.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        sp.parse(updFile, this);
+    }
+
     public void startDocument() throws SAXException {
         commands = new LinkedList<>();
     }
@@ -135,6 +161,7 @@ public class Updater extends DefaultHandler {
                 throw new IllegalArgumentException("Unknown type \"" + ur.atype + "\" for update");
             }
             c.validate(); // IllegalArgumentException can be thrown
+            c.index = commands.size();
             commands.add(c);
         }
         ur = null;
@@ -170,9 +197,6 @@ public class Updater extends DefaultHandler {
             processCommands(commands, sl);
             commands.clear();
 
-            // remove some empty lines
-            sl.pack();
-
             // write result
             writeOut(to, sl);
 
@@ -184,14 +208,14 @@ public class Updater extends DefaultHandler {
         }
     }
 
-    private void writeOut(String to, SigList sl) throws FileNotFoundException {
-        try (PrintWriter pw = new PrintWriter(new FileOutputStream(to))) {
+    private void writeOut(String to, SigList sl) throws IOException {
+        try (PrintWriter pw = new PrintWriter(FileManager.createSignatureFile(to))) {
             sl.print(pw);
         }
     }
 
     private SigList readInput(String from) throws IOException {
-        try (FileReader fr = new FileReader(from);
+        try (InputStreamReader fr = new InputStreamReader(FileManager.openSignatureFile(new File(from).toURI().toURL()));
              LineNumberReader r = new LineNumberReader(new BufferedReader(fr))) {
             SigList sl = new SigList();
             String s;
@@ -203,72 +227,82 @@ public class Updater extends DefaultHandler {
         }
     }
 
-    class SigList {
+    /**
+     * Signature file split into blocks of non-empty lines. Class blocks are
+     * indexed by class name, duplicates are chained in the file order.
+     * Removed blocks are skipped when the file is printed. Runs of empty
+     * lines are printed as a single one.
+     */
+    static class SigList {
+
+        private static final String CLASS_PREFIX = "CLSS ";
 
-        private final List<String> sigList = new ArrayList<>();
-        private int startPos = -1;
+        private final List<Block> blocks = new ArrayList<>();
+        private final TreeMap<String, Block> classes = new TreeMap<>();
+        private boolean emptyLine;
+        private Block last;
+        private Block current;
 
         public boolean findClass(String className) {
-            startPos = -1;
-            int i = 0;
-            while (i < sigList.size()) {
-                String l = sigList.get(i);
-                if (l.startsWith("CLSS ") && l.endsWith(" " + className)) {
-                    startPos = i;
-                    return true;
-                }
-                i++;
-            }
-            return false;
+            current = classes.get(className);
+            return current != null;
         }
 
         public void removeCurrentClass() {
-            if (startPos >= 0) {
-                while (!sigList.get(startPos).trim().isEmpty()) {
-                    sigList.remove(startPos);
+            if (current != null) {
+                current.removed = true;
+                // a duplicate of the class is found by the next find call
+                if (classes.get(current.className) == current) {
+                    if (current.next != null) {
+                        classes.put(current.className, current.next);
+                    } else {
+                        classes.remove(current.className);
+                    }
                 }
+                current = null;
             }
         }
 
         public void addText(String body) {
             StringTokenizer st = new StringTokenizer(body, "\n");
-            sigList.add("");
+            add("");
             while (st.hasMoreTokens()) {
-                sigList.add(st.nextToken().trim());
+                add(st.nextToken().trim());
             }
-            sigList.add("");
+            add("");
         }
 
-        public boolean findPackageMember(String packageName) {
-            startPos = -1;
-            int i = 0;
-            final String pSig = " " + packageName + ".";
-            while (i < sigList.size()) {
-                String l = sigList.get(i);
-                if (l.startsWith("CLSS ")) {
-                    int x = l.indexOf('<');
-                    int y = l.indexOf(pSig);
-                    if (y > 0 && ((y < x) || (x == -1))) {
-                        startPos = i;
-                        return true;
-                    }
+        /**
+         * Removes all the classes of the package and its subpackages
+         * including duplicates, in the file order
+         */
+        public void removePackage(String packageName) {
+            String prefix = packageName + ".";
+            SortedMap<String, Block> members = classes.subMap(prefix, prefix + Character.MAX_VALUE);
+            List<Block> removed = new ArrayList<>();
+            for (Block b : members.values()) {
+                for (; b != null; b = b.next) {
+                    removed.add(b);
                 }
-                i++;
             }
-            return false;
+            Collections.sort(removed, new Comparator<Block>() {
+                public int compare(Block b1, Block b2) {
+                    return Integer.compare(b1.index, b2.index);
+                }
+            });
+            for (Block b : removed) {
+                b.removed = true;
+            }
+            members.clear();
+            current = null;
         }
 
         public boolean removeMember(String memberName) {
-            if (startPos >= 0) {
-                for (int i = startPos; i < sigList.size(); i++) {
-                    String l = sigList.get(i).trim();
-                    if (memberName.equals(l)) {
-                        sigList.remove(i);
+            if (current != null) {
+                for (Iterator<String> it = current.lines.iterator(); it.hasNext(); ) {
+                    if (memberName.equals(it.next().trim())) {
+                        it.remove();
                         return true;
-                    } else {
-                        if (l.isEmpty()) {
-                            break;
-                        }
                     }
                 }
             }
@@ -276,60 +310,115 @@ public class Updater extends DefaultHandler {
         }
 
         public boolean changeMember(String oldMember, String newMember) {
-            if (startPos >= 0) {
-                for (int i = startPos; i < sigList.size(); i++) {
-                    String l = sigList.get(i).trim();
-                    if (oldMember.equals(l)) {
-                        sigList.set(i, newMember);
+            if (current != null) {
+                for (ListIterator<String> it = current.lines.listIterator(); it.hasNext(); ) {
+                    if (oldMember.equals(it.next().trim())) {
+                        it.set(newMember);
                         return true;
-                    } else {
-                        if (l.isEmpty()) {
-                            break;
-                        }
                     }
                 }
             }
             return false;
         }
 
-        public void pack() {
-            boolean empty = false;
-            for (int i = 0; i < sigList.size(); i++) {
-                String l = sigList.get(i);
-                if (l.trim().isEmpty()) {
-                    if (empty) {
-                        sigList.remove(i--);
-                        continue;
+        public boolean addMember(String memberName) {
+            if (current != null) {
+                // after the class annotations
+                int i = 1;
+                while (i < current.lines.size() && current.lines.get(i).trim().startsWith(AnnotationItem.ANNOTATION_PREFIX)) {
+                    i++;
+                }
+                current.lines.add(i, memberName);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean add(String s) {
+            if (s.trim().isEmpty()) {
+                emptyLine = true;
+                last = null;
+                return true;
+            }
+            if (last == null || s.startsWith(CLASS_PREFIX)) {
+                last = new Block(emptyLine, blocks.size());
+                blocks.add(last);
+                if (s.startsWith(CLASS_PREFIX)) {
+                    last.className = getClassName(s);
+                    Block b = classes.get(last.className);
+                    if (b == null) {
+                        classes.put(last.className, last);
                     } else {
-                        empty = true;
+                        while (b.next != null) {
+                            b = b.next;
+                        }
+                        b.next = last;
                     }
-                } else {
-                    empty = false;
                 }
             }
+            emptyLine = false;
+            return last.lines.add(s);
         }
 
-        public boolean addMember(String memberName) {
-            if (startPos >= 0) {
-                for (int i = startPos + 1; i < sigList.size(); i++) {
-                    String l = sigList.get(i).trim();
-                    if (!l.startsWith(AnnotationItem.ANNOTATION_PREFIX)) {
-                        sigList.add(i, memberName);
-                        return true;
-                    }
+        public void print(PrintWriter pw) {
+            boolean empty = false;
+            for (Block b : blocks) {
+                empty |= b.separated;
+                if (b.removed) {
+                    continue;
+                }
+                if (empty) {
+                    pw.write('\n');
+                    empty = false;
+                }
+                for (String l : b.lines) {
+                    pw.write(l);
+                    pw.write('\n');
                 }
             }
-            return false;
+            if (empty || emptyLine) {
+                pw.write('\n');
+            }
         }
 
-        public boolean add(String s) {
-            return sigList.add(s);
+        /**
+         * Returns lines of the classes which are not removed in the file order
+         */
+        public List<List<String>> getClasses() {
+            List<List<String>> result = new ArrayList<>();
+            for (Block b : blocks) {
+                if (!b.removed && b.className != null) {
+                    result.add(b.lines);
+                }
+            }
+            return result;
         }
 
-        public void print(PrintWriter pw) {
-            for (String o : sigList) {
-                pw.write(o + '\n');
+        static String getClassName(String classLine) {
+            int end = classLine.indexOf('<');
+            if (end < 0) {
+                end = classLine.length();
             }
+            String s = classLine.substring(0, end).trim();
+            return s.substring(s.lastIndexOf(' ') + 1);
+        }
+    }
+
+    private static class Block {
+
+        final List<String> lines = new ArrayList<>();
+        // preceded by empty line
+        final boolean separated;
+        // position in the file
+        final int index;
+        String className;
+        // the next class with the same name
+        Block next;
+        boolean removed;
+
+        Block(boolean separated, int index) {
+            this.separated = separated;
+            this.index = index;
         }
     }
 